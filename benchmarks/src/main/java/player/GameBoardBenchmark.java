@@ -0,0 +1,116 @@
+/* GameBoardBenchmark.java */
+
+package player;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *  Benchmarks of the GameBoard operations the search spends its time in.  Each
+ *  operation runs once on every corpus position of the chosen phase, so a
+ *  score is the time for the whole set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+
+  @Param({"opening", "middlegame", "step"})
+  public String phase;
+
+  GameBoard[] boards;
+  int[] sides;
+  MachinePlayer[] players;
+  int[] moves;
+
+  @Setup
+  public void setup() {
+    Positions positions = Positions.load(phase);
+    boards = positions.newBoards();
+    sides = positions.sides;
+    players = new MachinePlayer[boards.length];
+    for (int i = 0; i < boards.length; i++) {
+      players[i] = new MachinePlayer(sides[i]);
+    }
+    moves = new int[GameBoard.MAX_MOVES];
+  }
+
+  @Benchmark
+  public void copy(Blackhole bh) {
+    for (GameBoard b : boards) {
+      bh.consume(b.copy());
+    }
+  }
+
+  @Benchmark
+  public void calculateValidMoves(Blackhole bh) {
+    for (int i = 0; i < boards.length; i++) {
+      bh.consume(boards[i].calculateValidMoves(sides[i]));
+    }
+  }
+
+  @Benchmark
+  public int generateMoves() {
+    int total = 0;
+    for (int i = 0; i < boards.length; i++) {
+      total += boards[i].generateMoves(sides[i], moves);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void findConnections(Blackhole bh) {
+    for (GameBoard b : boards) {
+      for (int x = 0; x < GameBoard.SIZE; x++) {
+        for (int y = 0; y < GameBoard.SIZE; y++) {
+          Chip c = b.getPiece(x, y);
+          if (c != null) {
+            bh.consume(b.findConnections(c));
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public int countConnections() {
+    int total = 0;
+    for (GameBoard b : boards) {
+      total += b.countConnections(0) + b.countConnections(1);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void hasNetwork(Blackhole bh) {
+    for (GameBoard b : boards) {
+      bh.consume(b.hasNetwork(0));
+      bh.consume(b.hasNetwork(1));
+    }
+  }
+
+  @Benchmark
+  public int eval() {
+    int total = 0;
+    for (int i = 0; i < boards.length; i++) {
+      total += players[i].eval(boards[i]);
+    }
+    return total;
+  }
+
+}
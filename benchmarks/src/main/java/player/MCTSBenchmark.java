@@ -0,0 +1,54 @@
+/* MCTSBenchmark.java */
+
+package player;
+
+/**
+ *  Measures MCTSPlayer's playouts per second on the fixed positions of
+ *  ParallelSearchBenchmark, and how they scale as threads are added.  Each
+ *  position is searched for the same time with a fresh player.  For its
+ *  strength against MachinePlayer at equal time, use Tournament, e.g.
+ *  java player.Tournament -games 100 time=100,pvs mcts,time=100
+ *
+ *  Usage: java -cp benchmarks/target/benchmarks.jar player.MCTSBenchmark
+ *             [millis] [max threads]
+ */
+public class MCTSBenchmark {
+
+  // Searches every position for millis with the given thread count and
+  // returns {playouts, nanoseconds, tree nodes}.
+  static long[] run(int threads, long millis) {
+    long[] total = new long[3];
+    for (String position : ParallelSearchBenchmark.POSITIONS) {
+      String[] parts = position.split(" ");
+      MCTSPlayer p = new MCTSPlayer(parts[1].equals("b") ? 0 : 1, millis);
+      p.currentBoard = GameBoard.parse(parts[0]);
+      p.setThreads(threads);
+      p.chooseMove();
+      total[0] += p.lastPlayouts();
+      total[1] += p.lastNanos;
+      total[2] += p.treeSize();
+    }
+    return total;
+  }
+
+  public static void main(String[] args) {
+    long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+
+    run(1, millis); // warm up
+    System.out.println(millis + " ms a position, " + ParallelSearchBenchmark.POSITIONS.length + " positions, "
+        + Runtime.getRuntime().availableProcessors() + " processors");
+    System.out.println("threads      playouts    playouts/s    tree nodes   speedup");
+    double base = 0;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      long[] total = run(threads, millis);
+      double rate = total[0] * 1e9 / total[1];
+      if (threads == 1) {
+        base = rate;
+      }
+      System.out.println(String.format("%7d %13d %13.0f %13d %9.2f", threads, total[0], rate, total[2], rate / base));
+    }
+  }
+
+}
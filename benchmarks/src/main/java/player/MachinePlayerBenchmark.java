@@ -0,0 +1,81 @@
+/* MachinePlayerBenchmark.java */
+
+package player;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *  Benchmarks a full chooseMove on every corpus position of a phase.  Players
+ *  are rebuilt before each call, so the transposition table and history start
+ *  empty and every call does the same work.  The nodes counter reports how
+ *  many nodes the searches visited, which is what the search modes differ in.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class MachinePlayerBenchmark {
+
+  @Param({"opening", "middlegame", "step"})
+  public String phase;
+
+  @Param({"2", "3", "4", "5"})
+  public int depth;
+
+  @Param({"alphabeta", "pvs"})
+  public String mode;
+
+  Positions positions;
+  MachinePlayer[] players;
+
+  @Setup(Level.Trial)
+  public void load() {
+    positions = Positions.load(phase);
+  }
+
+  @Setup(Level.Invocation)
+  public void setup() {
+    GameBoard[] boards = positions.newBoards();
+    players = new MachinePlayer[boards.length];
+    for (int i = 0; i < boards.length; i++) {
+      players[i] = new MachinePlayer(positions.sides[i], depth);
+      players[i].setOpeningBook(null);
+      players[i].setEndgameTable(null);
+      players[i].setSearchMode(mode.equals("pvs") ? MachinePlayer.PVS : MachinePlayer.ALPHA_BETA);
+      players[i].currentBoard = boards[i];
+    }
+  }
+
+  // Nodes searched, summed over the measured calls.
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Nodes {
+    public long nodes;
+  }
+
+  @Benchmark
+  public void chooseMove(Nodes counter, Blackhole bh) {
+    for (MachinePlayer p : players) {
+      bh.consume(p.chooseMove());
+      counter.nodes += p.nodes;
+    }
+  }
+
+}
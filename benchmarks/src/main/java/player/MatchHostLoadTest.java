@@ -0,0 +1,197 @@
+/* MatchHostLoadTest.java */
+
+package player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Load-tests a MatchHost from one client thread.  Plays self-play games
+ *  between pairs of sessions, keeping the given number of games in progress
+ *  at once, each from a short random opening set up with forceMove and
+ *  opponentMove.  The client never blocks on a move: each game continues from
+ *  the completion of the last call it made, so thousands of games can be in
+ *  progress with one client thread and a few workers.
+ *
+ *  At the end it prints the moves per second, the chooseMove latencies over
+ *  all sessions, and how the sessions' own 99th percentiles spread.
+ *
+ *  Usage: java -cp benchmarks/target/benchmarks.jar player.MatchHostLoadTest
+ *             [-games N] [-concurrent N] [-workers N] [-depth D]
+ *             [-tablemb MB] [-opening PLIES] [-maxplies N] [-seed S]
+ */
+public class MatchHostLoadTest {
+
+  int games = 200;
+  int concurrent = 100;
+  int workers = Runtime.getRuntime().availableProcessors();
+  int depth = 2;
+  long tableMegabytes = 64;
+  int openingPlies = 4;
+  int maxPlies = 120;
+  long seed = 1;
+
+  final AtomicLong moves = new AtomicLong();
+  final List<LatencyHistogram> sessionLatencies = new ArrayList<>();
+  int whiteWins;
+  int blackWins;
+  int draws;
+
+  // One game between two sessions, with the client's own board as referee.
+  class Game {
+    final MatchHost.Session[] players = new MatchHost.Session[2];
+    final GameBoard board = new GameBoard();
+    final Random random;
+    int side = 1;
+    int ply;
+
+    Game(MatchHost host, int number) {
+      players[0] = host.open(0, depth);
+      players[1] = host.open(1, depth);
+      random = new Random(seed * 1000003 + number);
+    }
+
+    // Plays the game out and completes with the winner, or -1 for a draw.
+    CompletableFuture<Integer> play() {
+      return next();
+    }
+
+    private CompletableFuture<Integer> next() {
+      if (board.hasNetwork(0) || board.hasNetwork(1) || ply >= maxPlies) {
+        return CompletableFuture.completedFuture(winner());
+      }
+      if (ply < openingPlies) {
+        int[] buffer = new int[GameBoard.MAX_MOVES];
+        int n = board.generateMoves(side, buffer);
+        if (n > 0) {
+          return played(GameBoard.decode(buffer[random.nextInt(n)]), true);
+        }
+      }
+      return players[side].chooseMoveAsync().thenCompose(m -> played(m, false));
+    }
+
+    // Records m as made by the side to move, which chose it unless forced,
+    // and tells the sessions what they don't know yet.
+    private CompletableFuture<Integer> played(Move m, boolean forced) {
+      if (m == null || !board.isValidMove(m, side)) {
+        return CompletableFuture.completedFuture(1 - side); // an illegal move loses
+      }
+      board.performMove(m, side);
+      moves.incrementAndGet();
+      CompletableFuture<Boolean> told = players[1 - side].opponentMoveAsync(m);
+      if (forced) {
+        told = told.thenCombine(players[side].forceMoveAsync(m), (a, b) -> a && b);
+      }
+      return told.thenCompose(ok -> {
+        if (!ok) {
+          throw new IllegalStateException("a session rejected the legal move " + m);
+        }
+        side = 1 - side;
+        ply++;
+        return next();
+      });
+    }
+
+    private int winner() {
+      boolean black = board.hasNetwork(0);
+      boolean white = board.hasNetwork(1);
+      if (black && white) {
+        return side; // the player who just moved made both, and loses
+      }
+      return black ? 0 : white ? 1 : -1;
+    }
+
+    void close() {
+      for (MatchHost.Session s : players) {
+        s.close();
+      }
+    }
+  }
+
+  synchronized void finished(Game g, int winner) {
+    if (winner == 0) {
+      blackWins++;
+    } else if (winner == 1) {
+      whiteWins++;
+    } else {
+      draws++;
+    }
+    for (MatchHost.Session s : g.players) {
+      sessionLatencies.add(s.latency());
+    }
+  }
+
+  void run() throws InterruptedException {
+    MatchHost host = new MatchHost(workers, tableMegabytes << 20);
+    System.out.println(workers + " workers, " + (host.tableBytes() >> 20) + " MB of tables, "
+        + concurrent + " games at a time, depth " + depth);
+    Semaphore slots = new Semaphore(concurrent);
+    List<CompletableFuture<?>> running = new ArrayList<>();
+    int peak = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < games; i++) {
+      slots.acquire();
+      Game g = new Game(host, i);
+      peak = Math.max(peak, host.sessions());
+      running.add(g.play().whenComplete((winner, e) -> {
+        g.close();
+        slots.release();
+        if (e != null) {
+          e.printStackTrace();
+        } else {
+          finished(g, winner);
+        }
+      }));
+      if ((i + 1) % 100 == 0) {
+        System.out.println((i + 1) + " games started, " + host.sessions() + " sessions open, "
+            + host.latency().summary());
+      }
+    }
+    CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    host.close();
+
+    System.out.println(String.format("%d games (white %d, black %d, drawn %d) in %.1f s, peak %d sessions",
+        games, whiteWins, blackWins, draws, seconds, peak));
+    System.out.println(String.format("%d moves, %.0f moves/s", moves.get(), moves.get() / seconds));
+    System.out.println("chooseMove, all sessions: " + host.latency().summary());
+    long[] p99 = new long[sessionLatencies.size()];
+    for (int i = 0; i < p99.length; i++) {
+      p99[i] = sessionLatencies.get(i).percentile(0.99);
+    }
+    java.util.Arrays.sort(p99);
+    if (p99.length > 0) {
+      System.out.println(String.format("per-session p99: median %.2f, p90 %.2f, worst %.2f ms",
+          p99[p99.length / 2] / 1e6, p99[(int) (p99.length * 0.9)] / 1e6, p99[p99.length - 1] / 1e6));
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("-")) {
+        System.err.println("usage: java player.MatchHostLoadTest [-games N] [-concurrent N] [-workers N]"
+            + " [-depth D] [-tablemb MB] [-opening PLIES] [-maxplies N] [-seed S]");
+        System.exit(2);
+      }
+      options.put(args[i].substring(1), args[i + 1]);
+    }
+    MatchHostLoadTest t = new MatchHostLoadTest();
+    t.games = Integer.parseInt(options.getOrDefault("games", "" + t.games));
+    t.concurrent = Integer.parseInt(options.getOrDefault("concurrent", "" + t.concurrent));
+    t.workers = Integer.parseInt(options.getOrDefault("workers", "" + t.workers));
+    t.depth = Integer.parseInt(options.getOrDefault("depth", "" + t.depth));
+    t.tableMegabytes = Long.parseLong(options.getOrDefault("tablemb", "" + t.tableMegabytes));
+    t.openingPlies = Integer.parseInt(options.getOrDefault("opening", "" + t.openingPlies));
+    t.maxPlies = Integer.parseInt(options.getOrDefault("maxplies", "" + t.maxPlies));
+    t.seed = Long.parseLong(options.getOrDefault("seed", "" + t.seed));
+    t.run();
+  }
+
+}
@@ -0,0 +1,117 @@
+/* NodeCountBenchmark.java */
+
+package player;
+
+/**
+ *  Compares how many nodes MachinePlayer searches, and how long it takes, on
+ *  the fixed positions of ParallelSearchBenchmark with search features turned
+ *  on and off.  Every run starts from a fresh player, so results don't depend
+ *  on what earlier runs left in the transposition table.  Then it shows the
+ *  depth each configuration completes on each position in a fixed time.
+ *
+ *  Usage: java -cp benchmarks/target/benchmarks.jar player.NodeCountBenchmark
+ *             [depth] [millis]
+ */
+public class NodeCountBenchmark {
+
+  // A search configuration to compare.
+  interface Setup {
+    void apply(MachinePlayer p);
+  }
+
+  static final String[] NAMES = {
+    "no ordering",
+    "ordering",
+    "pvs",
+    "pvs+quiesce",
+    "pvs+lmr",
+    "pvs+futility",
+    "pvs+lmr+fut",
+  };
+
+  static final Setup[] SETUPS = {
+    p -> p.setMoveOrdering(false),
+    p -> p.setMoveOrdering(true),
+    p -> p.setSearchMode(MachinePlayer.PVS),
+    p -> { p.setSearchMode(MachinePlayer.PVS); p.setQuiescence(4); },
+    p -> { p.setSearchMode(MachinePlayer.PVS); p.setLateMoveReduction(1, 3, 4); },
+    p -> { p.setSearchMode(MachinePlayer.PVS); p.setFutilityPruning(2, MachinePlayer.MAX_SWING); },
+    p -> {
+      p.setSearchMode(MachinePlayer.PVS);
+      p.setLateMoveReduction(1, 3, 4);
+      p.setFutilityPruning(2, MachinePlayer.MAX_SWING);
+    },
+  };
+
+  // Searches one position and returns {nodes, nanoseconds}.
+  static long[] search(String position, int depth, Setup setup) {
+    MachinePlayer p = ParallelSearchBenchmark.player(position, depth);
+    setup.apply(p);
+    long start = System.nanoTime();
+    p.chooseMove();
+    return new long[] { p.nodes, System.nanoTime() - start };
+  }
+
+  // Searches one position for the given time and returns the depth of the
+  // last iteration it completed.
+  static int depthReached(String position, long millis, Setup setup) {
+    MachinePlayer p = ParallelSearchBenchmark.player(position, MachinePlayer.MAX_DEPTH);
+    setup.apply(p);
+    p.setTimeLimit(millis);
+    p.chooseMove();
+    return p.depthReached;
+  }
+
+  public static void main(String[] args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    long millis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+    String[] positions = ParallelSearchBenchmark.POSITIONS;
+    for (String position : positions) {
+      search(position, depth, SETUPS[0]); // warm up
+    }
+
+    System.out.println("depth " + depth + ", nodes per position");
+    StringBuilder header = new StringBuilder("position");
+    for (String name : NAMES) {
+      header.append(String.format(" %14s", name));
+    }
+    System.out.println(header);
+    long[] nodes = new long[SETUPS.length];
+    long[] time = new long[SETUPS.length];
+    for (int i = 0; i < positions.length; i++) {
+      StringBuilder line = new StringBuilder(String.format("%8d", i));
+      for (int s = 0; s < SETUPS.length; s++) {
+        long[] result = search(positions[i], depth, SETUPS[s]);
+        nodes[s] += result[0];
+        time[s] += result[1];
+        line.append(String.format(" %14d", result[0]));
+      }
+      System.out.println(line);
+    }
+    StringBuilder total = new StringBuilder("   total");
+    StringBuilder ms = new StringBuilder("      ms");
+    StringBuilder ratio = new StringBuilder("vs first");
+    for (int s = 0; s < SETUPS.length; s++) {
+      total.append(String.format(" %14d", nodes[s]));
+      ms.append(String.format(" %14d", time[s] / 1000000));
+      ratio.append(String.format(" %14.2f", (double) nodes[s] / nodes[0]));
+    }
+    System.out.println(total);
+    System.out.println(ms);
+    System.out.println(ratio);
+
+    // the search stops at the first iteration that finds a forced win, so a
+    // position won in one move stops at depth 1 whatever the time; the
+    // depths are shown per position rather than averaged
+    System.out.println("depth completed in " + millis + " ms a move");
+    System.out.println(header);
+    for (int i = 0; i < positions.length; i++) {
+      StringBuilder line = new StringBuilder(String.format("%8d", i));
+      for (Setup setup : SETUPS) {
+        line.append(String.format(" %14d", depthReached(positions[i], millis, setup)));
+      }
+      System.out.println(line);
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/* ParallelSearchBenchmark.java */
+
+package player;
+
+/**
+ *  Measures how the root-splitting search in MachinePlayer speeds up as
+ *  threads are added.  Every thread count searches the same fixed positions
+ *  to the same depth with a fresh transposition table, and the total time is
+ *  reported relative to one thread.
+ *
+ *  Usage: java -cp benchmarks/target/benchmarks.jar player.ParallelSearchBenchmark
+ *             [depth] [max threads]
+ */
+public class ParallelSearchBenchmark {
+
+  // Positions in GameBoard.toString() form, followed by the color to move.
+  // Three are from the ADD phase and three from the STEP phase.
+  static final String[] POSITIONS = {
+    "......../...w..../w......./.....b../.......w/.bb...../......../........ w",
+    "......../.bw.w.b./...b.bw./.......w/......../.b..w..w/......../......b. w",
+    "......../..b..bb./..w.w..w/.w..bw.w/..b...../....w.w./...b.b.w/.b...b.. w",
+    "...bb.../...w.wb./.....w.w/..w.b.bw/.w..b.b./..b...w./.bw.b.w./........ w",
+    "....b.../.b....ww/.bw.w.b./..w..w../w.b....w/.wbw..../......../.b.bb.b. w",
+    ".b.bb.../......b./wbw.wb../w.....w./..b.bbw./w..w..../.w..b..w/........ w",
+  };
+
+  // Sets up a player of the color to move on the given position.
+  static MachinePlayer player(String position, int depth) {
+    String[] parts = position.split(" ");
+    MachinePlayer p = new MachinePlayer(parts[1].equals("b") ? 0 : 1, depth);
+    p.setOpeningBook(null);
+    p.setEndgameTable(null);
+    p.currentBoard = GameBoard.parse(parts[0]);
+    return p;
+  }
+
+  // Searches every position once with the given thread count and returns the
+  // elapsed nanoseconds; the node count is added to nodes[0].
+  static long run(int threads, int depth, long[] nodes) {
+    long elapsed = 0;
+    for (int i = 0; i < POSITIONS.length; i++) {
+      MachinePlayer p = player(POSITIONS[i], depth);
+      p.setThreads(threads);
+      long start = System.nanoTime();
+      p.chooseMove();
+      elapsed += System.nanoTime() - start;
+      nodes[0] += p.nodes;
+      p.setThreads(1); // shuts down the pool
+    }
+    return elapsed;
+  }
+
+  public static void main(String[] args) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+
+    run(1, depth, new long[1]); // warm up
+    System.out.println("depth " + depth + ", " + POSITIONS.length + " positions, "
+        + Runtime.getRuntime().availableProcessors() + " processors");
+    System.out.println("threads        ms         nodes   speedup");
+    long base = 0;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      long[] nodes = new long[1];
+      long elapsed = run(threads, depth, nodes);
+      if (threads == 1) {
+        base = elapsed;
+      }
+      System.out.println(String.format("%7d %9d %13d %9.2f", threads, elapsed / 1000000,
+          nodes[0], (double) base / elapsed));
+    }
+  }
+
+}
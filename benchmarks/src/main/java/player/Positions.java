@@ -0,0 +1,71 @@
+/* Positions.java */
+
+package player;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  The benchmark position corpus, read from positions.txt next to this class.
+ *  Each line holds a phase ("opening", "middlegame" or "step"), a board in
+ *  GameBoard.toString() form and the color to move ("b" or "w").  Lines
+ *  starting with '#' are comments.
+ */
+public class Positions {
+
+  public final String[] boards;
+  public final int[] sides;
+
+  private Positions(List<String> boards, List<Integer> sides) {
+    this.boards = boards.toArray(new String[0]);
+    this.sides = new int[sides.size()];
+    for (int i = 0; i < this.sides.length; i++) {
+      this.sides[i] = sides.get(i);
+    }
+  }
+
+  // Returns the positions of one phase of the game.
+  public static Positions load(String phase) {
+    List<String> boards = new ArrayList<>();
+    List<Integer> sides = new ArrayList<>();
+    try (InputStream in = Positions.class.getResourceAsStream("positions.txt")) {
+      if (in == null) {
+        throw new IllegalStateException("positions.txt is missing");
+      }
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] parts = line.split("\\s+");
+        if (parts[0].equals(phase)) {
+          boards.add(parts[1]);
+          sides.add(parts[2].equals("b") ? 0 : 1);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("can't read positions.txt", e);
+    }
+    if (boards.isEmpty()) {
+      throw new IllegalArgumentException("no positions for phase " + phase);
+    }
+    return new Positions(boards, sides);
+  }
+
+  // Builds a fresh board for each position.
+  public GameBoard[] newBoards() {
+    GameBoard[] result = new GameBoard[boards.length];
+    for (int i = 0; i < boards.length; i++) {
+      result[i] = GameBoard.parse(boards[i]);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,347 @@
+/* BatchAnalyzer.java */
+
+package player;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Scores a stream of positions on all cores: MachinePlayer.eval, and a
+ *  minimax search to a fixed depth, for the player to move.
+ *
+ *  The caller's thread reads the input a chunk at a time and hands each chunk
+ *  to a work-stealing pool, where a worker parses and searches its positions
+ *  with a MachinePlayer of each color kept for that worker, so its buffers
+ *  and tables are reused from one position to the next.  Results are written
+ *  in input order as soon as every chunk before them is done.  At most
+ *  maxChunks chunks are read and not yet written at any time: once that many
+ *  are in flight, reading waits for the oldest to be written, so a slow
+ *  output holds back the input and memory stays bounded whatever the size of
+ *  the input.
+ *
+ *  Input is either a GameJournal, or text with a position per line in the
+ *  form of the benchmark corpus: an optional label, the board as written by
+ *  GameBoard.toString, and the color to move as b or w.  Blank lines and
+ *  lines starting with # are skipped.  Each output line holds, separated by
+ *  tabs: the position's index in the input, the board, the color to move,
+ *  eval, the search score, the best move (xy for an ADD, xy-xy for a STEP
+ *  from the first square to the second, - for none) and the nodes searched.
+ *  A position that can't be read or searched gets "error" and the reason
+ *  instead.
+ *
+ *  Scores don't depend on which worker searched a position or in what order;
+ *  with a transposition table, which of several equally good moves is
+ *  reported can.
+ *
+ *  Usage: java player.BatchAnalyzer [-depth D] [-threads N] [-chunk N]
+ *             [-inflight N] [-table BITS] INPUT [OUTPUT]
+ */
+public class BatchAnalyzer {
+
+  int depth = 2;
+  int threads = Runtime.getRuntime().availableProcessors();
+  int chunkSize = 256; // positions per chunk
+  int maxChunks = 4 * threads; // chunks read and not yet written
+  int tableBits = 16; // per worker and color, or 0 for no table
+
+  // A run of consecutive positions from the input, and their results.
+  abstract static class Chunk {
+    final long first; // index of the first position in the input
+    final long sequence; // this chunk's place in the input
+    int size;
+    String[] results;
+
+    Chunk(long first, long sequence) {
+      this.first = first;
+      this.sequence = sequence;
+    }
+
+    // Returns position i of the chunk as {board, color}, or throws
+    // IllegalArgumentException if it isn't one.
+    abstract Object[] position(int i);
+  }
+
+  static class TextChunk extends Chunk {
+    final String[] lines;
+
+    TextChunk(long first, long sequence, int capacity) {
+      super(first, sequence);
+      lines = new String[capacity];
+    }
+
+    Object[] position(int i) {
+      String[] parts = lines[i].trim().split("\\s+");
+      if (parts.length < 2 || parts.length > 3) {
+        throw new IllegalArgumentException("expected [label] board color");
+      }
+      String color = parts[parts.length - 1];
+      if (!color.equals("b") && !color.equals("w")) {
+        throw new IllegalArgumentException("color to move must be b or w");
+      }
+      return new Object[] { GameBoard.parse(parts[parts.length - 2]), color.equals("b") ? 0 : 1 };
+    }
+  }
+
+  static class JournalChunk extends Chunk {
+    final GameJournal journal;
+
+    JournalChunk(long first, long sequence, GameJournal journal) {
+      super(first, sequence);
+      this.journal = journal;
+    }
+
+    Object[] position(int i) {
+      int color = journal.sideToMove(first + i);
+      if (color != 0 && color != 1) {
+        throw new IllegalArgumentException("color to move is " + color);
+      }
+      return new Object[] { journal.board(first + i), color };
+    }
+  }
+
+  // What a worker keeps from one position to the next.
+  private final ThreadLocal<MachinePlayer[]> searchers = ThreadLocal.withInitial(() -> {
+    MachinePlayer[] players = new MachinePlayer[2];
+    for (int color = 0; color < 2; color++) {
+      players[color] = new MachinePlayer(color, depth, tableBits == 0 ? null
+          : new TranspositionTable(tableBits, TranspositionTable.REPLACE_DEPTH));
+    }
+    return players;
+  });
+
+  private Semaphore inFlight;
+  private Writer out;
+  private final Map<Long, Chunk> done = new HashMap<>(); // finished, waiting for earlier chunks
+  private long nextToWrite;
+  private Throwable failure; // an IOException writing, or what stopped a worker
+  final AtomicLong positions = new AtomicLong();
+  final AtomicLong nodes = new AtomicLong();
+
+  // Analyzes the positions of a text input.
+  public void analyze(BufferedReader in, Writer out) throws IOException, InterruptedException {
+    run(out, new ChunkReader() {
+      long index;
+
+      public Chunk next(long sequence) throws IOException {
+        TextChunk chunk = new TextChunk(index, sequence, chunkSize);
+        String line;
+        while (chunk.size < chunkSize && (line = in.readLine()) != null) {
+          String trimmed = line.trim();
+          if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+            chunk.lines[chunk.size++] = trimmed;
+          }
+        }
+        index += chunk.size;
+        return chunk.size == 0 ? null : chunk;
+      }
+    });
+  }
+
+  // Analyzes every position of a journal.
+  public void analyze(GameJournal journal, Writer out) throws IOException, InterruptedException {
+    run(out, new ChunkReader() {
+      long index;
+
+      public Chunk next(long sequence) {
+        long n = Math.min(chunkSize, journal.size() - index);
+        if (n <= 0) {
+          return null;
+        }
+        JournalChunk chunk = new JournalChunk(index, sequence, journal);
+        chunk.size = (int) n;
+        index += n;
+        return chunk;
+      }
+    });
+  }
+
+  interface ChunkReader {
+    // Returns the next chunk of input, or null at the end.
+    Chunk next(long sequence) throws IOException;
+  }
+
+  private void run(Writer out, ChunkReader reader) throws IOException, InterruptedException {
+    this.out = out;
+    inFlight = new Semaphore(maxChunks);
+    done.clear();
+    nextToWrite = 0;
+    failure = null;
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (long sequence = 0; ; sequence++) {
+        inFlight.acquire();
+        Chunk chunk;
+        try {
+          chunk = reader.next(sequence);
+        } catch (IOException e) {
+          inFlight.release();
+          throw e;
+        }
+        if (chunk == null) {
+          inFlight.release();
+          break;
+        }
+        pool.execute(() -> {
+          try {
+            analyze(chunk);
+          } catch (RuntimeException | Error e) {
+            synchronized (this) {
+              if (failure == null) {
+                failure = e;
+              }
+            }
+          } finally {
+            finished(chunk); // frees the chunk's place in flight whatever happened
+          }
+        });
+        synchronized (this) {
+          if (failure != null) {
+            break;
+          }
+        }
+      }
+      inFlight.acquire(maxChunks); // every chunk read has been written
+    } finally {
+      pool.shutdownNow();
+    }
+    synchronized (this) {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure != null) {
+        throw (Error) failure;
+      }
+    }
+    out.flush();
+  }
+
+  // Scores the positions of chunk on the calling worker.  A position that
+  // can't be read or searched gets an error line.
+  private void analyze(Chunk chunk) {
+    MachinePlayer[] players = searchers.get();
+    chunk.results = new String[chunk.size];
+    for (int i = 0; i < chunk.size; i++) {
+      long index = chunk.first + i;
+      try {
+        Object[] position = chunk.position(i);
+        GameBoard board = (GameBoard) position[0];
+        int color = (Integer) position[1];
+        MachinePlayer p = players[color];
+        p.currentBoard = board;
+        int eval = p.eval(board);
+        p.nodes = 0;
+        Best best = p.minimax(board, MachinePlayer.COMPUTER, depth, -100, 100);
+        nodes.addAndGet(p.nodes);
+        chunk.results[i] = index + "\t" + board + "\t" + (color == 0 ? 'b' : 'w') + "\t" + eval + "\t"
+            + best.score + "\t" + moveString(best.move) + "\t" + p.nodes;
+      } catch (IllegalArgumentException e) {
+        chunk.results[i] = index + "\terror\t" + e.getMessage();
+      } catch (RuntimeException e) {
+        chunk.results[i] = index + "\terror\t" + e;
+      }
+    }
+    positions.addAndGet(chunk.size);
+  }
+
+  // Writes chunk, and any chunks after it that were waiting for it, freeing
+  // a place in flight for each.
+  private synchronized void finished(Chunk chunk) {
+    done.put(chunk.sequence, chunk);
+    Chunk next;
+    while ((next = done.remove(nextToWrite)) != null) {
+      if (failure == null) {
+        try {
+          for (String line : next.results) {
+            out.write(line);
+            out.write('\n');
+          }
+        } catch (IOException e) {
+          failure = e;
+        }
+      }
+      nextToWrite++;
+      inFlight.release();
+    }
+  }
+
+  static String moveString(Move m) {
+    if (m == null) {
+      return "-";
+    } else if (m.moveKind == Move.STEP) {
+      return m.x2 + "" + m.y2 + "-" + m.x1 + "" + m.y1;
+    }
+    return m.x1 + "" + m.y1;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    BatchAnalyzer a = new BatchAnalyzer();
+    List<String> files = new ArrayList<>();
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].startsWith("-") && i + 1 < args.length) {
+        options.put(args[i].substring(1), args[++i]);
+      } else {
+        files.add(args[i]);
+      }
+    }
+    if (files.isEmpty() || files.size() > 2) {
+      System.err.println("usage: java player.BatchAnalyzer [-depth D] [-threads N] [-chunk N] [-inflight N]"
+          + " [-table BITS] INPUT [OUTPUT]");
+      System.exit(2);
+    }
+    a.depth = Integer.parseInt(options.getOrDefault("depth", "" + a.depth));
+    a.threads = Integer.parseInt(options.getOrDefault("threads", "" + a.threads));
+    a.chunkSize = Integer.parseInt(options.getOrDefault("chunk", "" + a.chunkSize));
+    a.maxChunks = Integer.parseInt(options.getOrDefault("inflight", "" + 4 * a.threads));
+    a.tableBits = Integer.parseInt(options.getOrDefault("table", "" + a.tableBits));
+
+    Path input = Paths.get(files.get(0));
+    Writer out = files.size() > 1 ? Files.newBufferedWriter(Paths.get(files.get(1)))
+        : new BufferedWriter(new OutputStreamWriter(System.out));
+    long start = System.nanoTime();
+    try {
+      if (isJournal(input)) {
+        try (GameJournal journal = GameJournal.openReadOnly(input)) {
+          a.analyze(journal, out);
+        }
+      } else {
+        try (BufferedReader in = Files.newBufferedReader(input)) {
+          a.analyze(in, out);
+        }
+      }
+    } finally {
+      out.flush();
+      if (files.size() > 1) {
+        out.close();
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.println(String.format("%d positions in %.1f s, %.0f positions/s, %.0f nodes/s, %d threads",
+        a.positions.get(), seconds, a.positions.get() / seconds, a.nodes.get() / seconds, a.threads));
+  }
+
+  // Returns true if the file starts with the GameJournal magic number.
+  static boolean isJournal(Path path) throws IOException {
+    try (InputStream in = Files.newInputStream(path)) {
+      byte[] magic = in.readNBytes(4);
+      return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == GameJournal.MAGIC;
+    }
+  }
+
+}
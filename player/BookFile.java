@@ -0,0 +1,150 @@
+/* BookFile.java */
+
+package player;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  A read-only table from position keys (GameBoard.hashKey, or canonicalKey)
+ *  to a move and a score, stored as a sorted array of fixed-size entries and
+ *  memory-mapped, so opening one costs nothing until it is probed and many
+ *  players can share it.  A lookup is a binary search.
+ *
+ *  Layout, big-endian: the int MAGIC, the int VERSION, the entry count as an
+ *  int, a reserved int, then for each entry the key as a long, the packed move
+ *  as an int and the score as an int, in increasing key order.
+ */
+public class BookFile {
+
+  public static final int MAGIC = 0x4E424B31; // "NBK1"
+  public static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int ENTRY_SIZE = 16;
+
+  private final ByteBuffer buffer;
+  private final int size;
+
+  // Wraps a buffer holding a book, checking its header.
+  public BookFile(ByteBuffer buffer) {
+    this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("not a book file");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IllegalArgumentException("unsupported book version " + buffer.getInt(4));
+    }
+    size = buffer.getInt(8);
+    if (size < 0 || (long) HEADER_SIZE + (long) size * ENTRY_SIZE > buffer.capacity()) {
+      throw new IllegalArgumentException("book file is truncated");
+    }
+  }
+
+  // Memory-maps the book at path.
+  public static BookFile open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new BookFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  // Opens a book shipped next to the given class, or returns null if there
+  // isn't one.  A book on disk is mapped; one inside a jar is read into memory.
+  public static BookFile load(Class<?> owner, String name) throws IOException {
+    URL url = owner.getResource(name);
+    if (url == null) {
+      return null;
+    }
+    if (url.getProtocol().equals("file")) {
+      try {
+        return open(Paths.get(url.toURI()));
+      } catch (URISyntaxException e) {
+        // fall through and read it as a stream
+      }
+    }
+    try (InputStream in = url.openStream()) {
+      return new BookFile(ByteBuffer.wrap(in.readAllBytes()));
+    }
+  }
+
+  // Returns the number of entries.
+  public int size() {
+    return size;
+  }
+
+  // Returns the index of the entry for key, or -1 if there is none.
+  public int find(long key) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long k = key(mid);
+      if (k < key) {
+        lo = mid + 1;
+      } else if (k > key) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  // Returns the packed move stored for key, or 0 if the book doesn't have it.
+  public int probe(long key) {
+    int i = find(key);
+    return i < 0 ? 0 : move(i);
+  }
+
+  public long key(int i) {
+    return buffer.getLong(HEADER_SIZE + i * ENTRY_SIZE);
+  }
+
+  public int move(int i) {
+    return buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8);
+  }
+
+  public int score(int i) {
+    return buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 12);
+  }
+
+  // Writes the n entries to path as a book.  The entries are sorted here; a
+  // key given more than once keeps its last move and score.
+  public static void write(Path path, long[] keys, int[] moves, int[] scores, int n) throws IOException {
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    // stable, so equal keys stay in the order they were given
+    java.util.Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (i == n - 1 || keys[order[i]] != keys[order[i + 1]]) {
+        count++;
+      }
+    }
+    ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE);
+    out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+    for (int i = 0; i < n; i++) {
+      int e = order[i];
+      if (i == n - 1 || keys[e] != keys[order[i + 1]]) {
+        out.putLong(keys[e]).putInt(moves[e]).putInt(scores[e]);
+      }
+    }
+    out.flip();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (out.hasRemaining()) {
+        channel.write(out);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,282 @@
+/* EndgameTable.java */
+
+package player;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *  The endgame table: STEP-phase positions that are decided within a few
+ *  plies, with the result for the side to move.  MachinePlayer probes it at
+ *  the leaves of its search, where it stands in for the plies the search
+ *  can't see, and at the root, where it plays a proven win outright.
+ *
+ *  The table ships as endgame.bin next to this class, in BookFile form, keyed
+ *  by GameBoard.canonicalKey, so a position and its transpose share an entry.
+ *  An entry's score is the number of plies until a network is completed:
+ *  positive when the side to move completes it, negative when the opponent
+ *  does.  Its move is the winning move in the canonical form of the position,
+ *  or 0.
+ *
+ *  Running this class rebuilds the table.  Self-play from the start of the
+ *  game rarely lasts until the STEP phase, so each game places the twenty
+ *  chips at random, avoiding networks and moves that let either player
+ *  complete one next, and then plays the STEP phase by
+ *  self-play, leaving the players' line at random as OpeningBook does.  Every
+ *  STEP position reached is solved.  The solver is an exhaustive
+ *  AND/OR search: a win in n moves is a move after which every reply leaves
+ *  a win in n - 1, and a loss is a position where every move allows one.  A
+ *  move that completes networks for both players loses for the player who
+ *  made it.
+ *
+ *  Usage: java player.EndgameTable [file] [games] [moves] [depth] [seed]
+ */
+public class EndgameTable {
+
+  static final String RESOURCE = "endgame.bin";
+  // chance at each ply that a self-play game leaves the players' line
+  static final double VARIETY = 0.25;
+  // STEP plies played per game before giving up on a network
+  static final int STEP_PLIES = 60;
+
+  private static BookFile shared;
+  private static boolean loaded;
+
+  private final int maxMoves;
+  private final int[][] buffers; // buffers[ply] holds the moves generated at that ply
+  private final int[] killers; // killers[ply] last won or held at that ply, tried first
+  private int winningMove;
+  long nodes;
+
+  // Creates a solver that looks for networks within maxMoves moves of the
+  // winner.
+  public EndgameTable(int maxMoves) {
+    this.maxMoves = maxMoves;
+    buffers = new int[2 * maxMoves][GameBoard.MAX_MOVES];
+    killers = new int[2 * maxMoves];
+  }
+
+  // Returns the table shipped with the player, loading it on first use, or
+  // null if there is none.  Every player shares the one mapping.
+  static synchronized BookFile shared() {
+    if (!loaded) {
+      loaded = true;
+      try {
+        shared = BookFile.load(EndgameTable.class, RESOURCE);
+      } catch (IOException | IllegalArgumentException e) {
+        System.err.println("endgame table not loaded: " + e.getMessage());
+      }
+    }
+    return shared;
+  }
+
+  // Returns true if board is in the STEP phase, the only phase the table
+  // covers.
+  static boolean covers(GameBoard board) {
+    return board.blackcount == 10 && board.whitecount == 10;
+  }
+
+  // Solves board with side to move.  Returns the plies until a network in
+  // table form (positive for a win, negative for a loss), or 0 if neither
+  // player can force one within maxMoves moves.  After a win, winningMove()
+  // is the move that forces it.
+  public int solve(GameBoard board, int side) {
+    winningMove = 0;
+    for (int n = 1; n <= maxMoves; n++) {
+      if (canWin(board, side, n, 0)) {
+        return 2 * n - 1;
+      }
+    }
+    for (int n = 1; n < maxMoves; n++) {
+      if (defenceFails(board, side, n, 0)) {
+        return -2 * n;
+      }
+    }
+    return 0;
+  }
+
+  public int winningMove() {
+    return winningMove;
+  }
+
+  // Returns true if side, to move, can complete a network within n moves
+  // whatever the opponent does.
+  private boolean canWin(GameBoard board, int side, int n, int ply) {
+    int opp = 1 - side;
+    int[] moves = buffers[ply];
+    int count = generate(board, side, ply);
+    for (int i = 0; i < count; i++) {
+      int m = moves[i];
+      nodes++;
+      board.doMove(m, side);
+      boolean won;
+      if (board.hasNetwork(opp)) {
+        won = false; // gives the opponent a network, even if it makes ours too
+      } else if (board.hasNetwork(side)) {
+        won = true;
+      } else {
+        won = n > 1 && defenceFails(board, opp, n - 1, ply + 1);
+      }
+      board.undoMove(m, side);
+      if (won) {
+        killers[ply] = m;
+        if (ply == 0) {
+          winningMove = m;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Returns true if every move of defender, to move, leaves the opponent a
+  // network within n moves.
+  private boolean defenceFails(GameBoard board, int defender, int n, int ply) {
+    int winner = 1 - defender;
+    int[] moves = buffers[ply];
+    int count = generate(board, defender, ply);
+    if (count == 0) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      int m = moves[i];
+      nodes++;
+      board.doMove(m, defender);
+      boolean lost;
+      if (board.hasNetwork(winner)) {
+        lost = true; // completes the winner's network, even if it makes ours too
+      } else if (board.hasNetwork(defender)) {
+        lost = false;
+      } else {
+        lost = canWin(board, winner, n, ply + 1);
+      }
+      board.undoMove(m, defender);
+      if (!lost) {
+        killers[ply] = m;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Generates the moves of color into buffers[ply], with the killer for that
+  // ply first: the same move tends to win, or to hold, in sibling positions.
+  private int generate(GameBoard board, int color, int ply) {
+    int[] moves = buffers[ply];
+    int count = board.generateMoves(color, moves);
+    for (int i = 1; i < count; i++) {
+      if (moves[i] == killers[ply]) {
+        moves[i] = moves[0];
+        moves[0] = killers[ply];
+        break;
+      }
+    }
+    return count;
+  }
+
+  // Picks a random ADD move among the n in moves that neither completes a
+  // network nor leaves one a move away for either player, or any of them if
+  // there is no such move.
+  int quietAdd(GameBoard board, int side, int[] moves, int n, Random random) {
+    for (int tries = 0; tries < n; tries++) {
+      int m = moves[random.nextInt(n)];
+      board.doMove(m, side);
+      boolean quiet = !board.hasNetwork(0) && !board.hasNetwork(1)
+          && !canWin(board, 1 - side, 1, 1) && !canWin(board, side, 1, 1);
+      board.undoMove(m, side);
+      if (quiet) {
+        return m;
+      }
+    }
+    return moves[random.nextInt(n)];
+  }
+
+  // Solves board with side to move unless it has been solved already, and
+  // adds it to table if it is decided.
+  void record(GameBoard board, int side, java.util.Set<Long> solved, Map<Long, int[]> table) {
+    int symmetry = board.canonicalSymmetry(side);
+    long key = board.symmetricKey(symmetry, side);
+    if (solved.add(key)) {
+      int plies = solve(board, side);
+      if (plies != 0) {
+        table.put(key, new int[] { GameBoard.symmetricMove(symmetry, winningMove), plies });
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path file = Paths.get(args.length > 0 ? args[0] : "player/" + RESOURCE);
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+    int maxMoves = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+    int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+    Random random = new Random(args.length > 4 ? Long.parseLong(args[4]) : 1);
+
+    MachinePlayer[] players = new MachinePlayer[2];
+    for (int color = 0; color < 2; color++) {
+      players[color] = new MachinePlayer(color, depth);
+      players[color].setEndgameTable(null);
+    }
+    EndgameTable solver = new EndgameTable(maxMoves);
+
+    Map<Long, int[]> table = new HashMap<>(); // key -> {move, plies}
+    java.util.Set<Long> solved = new java.util.HashSet<>();
+    int[] moves = new int[GameBoard.MAX_MOVES];
+    long start = System.nanoTime();
+    for (int game = 0; game < games; game++) {
+      GameBoard board = new GameBoard();
+      int side = 1; // white moves first
+      int stepPlies = 0;
+      while (stepPlies < STEP_PLIES && !board.hasNetwork(0) && !board.hasNetwork(1)) {
+        int move;
+        int n = board.generateMoves(side, moves);
+        if (n == 0) {
+          break;
+        }
+        if (covers(board)) {
+          // the position and every position a move away: those are what a
+          // search from here sees at its leaves
+          stepPlies++;
+          solver.record(board, side, solved, table);
+          for (int i = 0; i < n; i++) {
+            board.doMove(moves[i], side);
+            if (!board.hasNetwork(0) && !board.hasNetwork(1)) {
+              solver.record(board, 1 - side, solved, table);
+            }
+            board.undoMove(moves[i], side);
+          }
+        }
+        if (!covers(board)) {
+          move = solver.quietAdd(board, side, moves, n, random);
+        } else if (random.nextDouble() < VARIETY) {
+          move = moves[random.nextInt(n)];
+        } else {
+          MachinePlayer p = players[side];
+          p.currentBoard = board.copy();
+          move = GameBoard.encode(p.chooseMove());
+        }
+        board.doMove(move, side);
+        side = 1 - side;
+      }
+      System.out.println("game " + (game + 1) + "/" + games + ": " + solved.size() + " solved, "
+          + table.size() + " decided, " + (System.nanoTime() - start) / 1000000000 + "s");
+    }
+
+    long[] keys = new long[table.size()];
+    int[] winning = new int[keys.length];
+    int[] plies = new int[keys.length];
+    int i = 0;
+    for (Map.Entry<Long, int[]> e : table.entrySet()) {
+      keys[i] = e.getKey();
+      winning[i] = e.getValue()[0];
+      plies[i] = e.getValue()[1];
+      i++;
+    }
+    BookFile.write(file, keys, winning, plies, keys.length);
+    System.out.println("wrote " + keys.length + " positions to " + file);
+  }
+
+}
@@ -8,11 +8,119 @@ public class GameBoard {
 	public static final int SIZE = 8;
 	protected int whitecount;
 	protected int blackcount;
-	protected Chip[][] board;
+	protected long[] chips; // one occupancy mask per color, indexed by square(x, y)
+	// Zobrist key of the chips on the board as seen through each symmetry (hashes[IDENTITY]
+	// is the board as it is), kept up to date by addChip/removeChip
+	protected long[] hashes;
+	protected int[] pairs; // number of connected pairs of chips of each color, kept up to date likewise
+	private long[] adjacency; // scratch space for hasNetwork: the connections of each chip
+
+	/* board masks. Square (x, y) is bit x * SIZE + y, so each column is one byte
+	 of the mask and each row is every eighth bit. */
+	static final long COLUMN_0 = 0x00000000000000FFL;
+	static final long COLUMN_7 = COLUMN_0 << 56;
+	static final long ROW_0 = 0x0101010101010101L;
+	static final long ROW_7 = ROW_0 << 7;
+	static final long CORNERS = (COLUMN_0 | COLUMN_7) & (ROW_0 | ROW_7);
+	static final long[] GOALS = { (ROW_0 | ROW_7) & ~CORNERS, (COLUMN_0 | COLUMN_7) & ~CORNERS };
+	static final long[] START_GOAL = { ROW_0 & ~CORNERS, COLUMN_0 & ~CORNERS };
+	static final long[] END_GOAL = { ROW_7 & ~CORNERS, COLUMN_7 & ~CORNERS };
+	// squares a color may never occupy: the corners and the opponent's goal areas
+	static final long[] FORBIDDEN = { CORNERS | GOALS[1], CORNERS | GOALS[0] };
+	// the most moves a color can have: 10 chips times 54 open squares
+	static final int MAX_MOVES = 540;
+	// the length of the binary form written by writeTo
+	static final int ENCODED_BYTES = 20;
+	// the 3x3 block around each square, the square itself included
+	static final long[] NEIGHBORHOOD = new long[SIZE * SIZE];
+	// RAYS[d][sq] holds the squares seen from sq looking in direction d, nearest first for
+	// d < 4 (which step to higher squares) and nearest last for d >= 4
+	static final int[] DX = { 1, 0, 1, 1, -1, 0, -1, -1 };
+	static final int[] DY = { 0, 1, 1, -1, 0, -1, -1, 1 };
+	static final long[][] RAYS = new long[8][SIZE * SIZE];
+	// LINE[(a << 6) | b] is the line through squares a and b: 0 for a column, 1 for a row,
+	// 2 for a diagonal with x and y rising together and ANTI_DIAGONAL for the other one
+	static final byte[] LINE = new byte[64 * 64];
+	static final int ANTI_DIAGONAL = 3;
+	// one shared chip per color and square, handed out by getPiece
+	private static final Chip[][] CHIPS = new Chip[2][SIZE * SIZE];
+	// random keys for a chip of each color on each square, and for white to move. The seed
+	// is fixed so keys are the same in every run.
+	static final long[][] ZOBRIST = new long[2][SIZE * SIZE];
+	static final long WHITE_TO_MOVE;
+	/* symmetries that leave the game unchanged. The rules alone would allow eight, but
+	search, like the original path check, lets a network run straight along the falling
+	diagonal and not the rising one, which rules out every reflection or turn that swaps
+	the two; and it lets a long enough path pass back through its start goal but never
+	through its end goal, which rules out those that swap the two goals. That leaves the
+	transpose, which turns black's goals into white's, so it swaps the colors too. Each
+	symmetry is its own inverse. */
+	static final int IDENTITY = 0;
+	static final int TRANSPOSE = 1; // (x, y) -> (y, x), colors swapped
+	static final int SYMMETRIES = 2;
+	// SYMMETRIC_SQUARE[s][sq] is where symmetry s takes sq
+	static final int[][] SYMMETRIC_SQUARE = new int[SYMMETRIES][SIZE * SIZE];
+	// SYMMETRIC_ZOBRIST[s][color][sq] is the key the chip adds to hashes[s]
+	static final long[][][] SYMMETRIC_ZOBRIST = new long[SYMMETRIES][2][SIZE * SIZE];
+
+	static {
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				int sq = square(x, y);
+				for (int i = x - 1; i <= x + 1; i++) {
+					for (int j = y - 1; j <= y + 1; j++) {
+						if (i >= 0 && i < SIZE && j >= 0 && j < SIZE) {
+							NEIGHBORHOOD[sq] |= 1L << square(i, j);
+						}
+					}
+				}
+				for (int d = 0; d < 8; d++) {
+					for (int i = x + DX[d], j = y + DY[d]; onBoard(i, j); i += DX[d], j += DY[d]) {
+						RAYS[d][sq] |= 1L << square(i, j);
+					}
+				}
+				for (int to = 0; to < SIZE * SIZE; to++) {
+					int dx = (to >>> 3) - x;
+					int dy = (to & 7) - y;
+					LINE[(sq << 6) | to] = (byte) (dx == 0 ? 0 : dy == 0 ? 1 : dx == dy ? 2 : ANTI_DIAGONAL);
+				}
+				for (int color = 0; color <= 1; color++) {
+					Chip c = new Chip(color);
+					c.x = x;
+					c.y = y;
+					CHIPS[color][sq] = c;
+				}
+			}
+		}
+		java.util.Random random = new java.util.Random(0x4E6574776F726BL);
+		for (int color = 0; color <= 1; color++) {
+			for (int sq = 0; sq < SIZE * SIZE; sq++) {
+				ZOBRIST[color][sq] = random.nextLong();
+			}
+		}
+		WHITE_TO_MOVE = random.nextLong();
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				int sq = square(x, y);
+				SYMMETRIC_SQUARE[IDENTITY][sq] = sq;
+				SYMMETRIC_SQUARE[TRANSPOSE][sq] = square(y, x);
+			}
+		}
+		for (int s = 0; s < SYMMETRIES; s++) {
+			for (int color = 0; color <= 1; color++) {
+				for (int sq = 0; sq < SIZE * SIZE; sq++) {
+					SYMMETRIC_ZOBRIST[s][color][sq] = ZOBRIST[symmetricColor(s, color)][SYMMETRIC_SQUARE[s][sq]];
+				}
+			}
+		}
+	}
 	
 	/* gameboard constructor */
 	protected GameBoard() { // creates a new empty gameboard
-		board = new Chip[SIZE][SIZE];
+		chips = new long[2];
+		pairs = new int[2];
+		hashes = new long[SYMMETRIES];
+		adjacency = new long[SIZE * SIZE];
 		whitecount = 0;
 		blackcount = 0;
 	}
@@ -21,82 +129,386 @@ public class GameBoard {
 	 original. This is mainly used for our min-max algorithm to explore the depths. */
 	protected GameBoard copy() {
 		GameBoard c = new GameBoard();
-		for (int x = 0; x <= 7; x++) {
-	        for (int y = 0; y <= 7; y++) {
-	        	if (hasPiece(x,y)) {
-	        		c.addPiece(this.board[x][y], x, y);
-	        	}
-	        }
-	    }
+		c.chips[0] = chips[0];
+		c.chips[1] = chips[1];
+		c.blackcount = blackcount;
+		c.whitecount = whitecount;
+		System.arraycopy(hashes, 0, c.hashes, 0, SYMMETRIES);
+		c.pairs[0] = pairs[0];
+		c.pairs[1] = pairs[1];
 	    return c;
 	}
 
+	/* Returns the bit index of the x,y coordinate. Assumes the coordinate is on the board. */
+	static int square(int x, int y) {
+		return (x << 3) | y;
+	}
+
+	/* Returns the board as eight rows, top (y = 0) first, separated by '/'. Each row
+	lists x = 0 to 7 as 'b' for black, 'w' for white or '.' for an empty space. */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int y = 0; y < SIZE; y++) {
+			if (y > 0) {
+				sb.append('/');
+			}
+			for (int x = 0; x < SIZE; x++) {
+				int color = getColor(x, y);
+				sb.append(color == 0 ? 'b' : color == 1 ? 'w' : '.');
+			}
+		}
+		return sb.toString();
+	}
+
+	/* Builds a board from the form written by toString. Every chip must be placeable
+	by an ADD move, which holds for any position reached in a game. */
+	static GameBoard parse(String rows) {
+		GameBoard b = new GameBoard();
+		String[] lines = rows.split("/");
+		if (lines.length != SIZE) {
+			throw new IllegalArgumentException("expected " + SIZE + " rows: " + rows);
+		}
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < lines[y].length(); x++) {
+				char c = lines[y].charAt(x);
+				if (c == 'b' || c == 'w') {
+					Move m = new Move(x, y);
+					int color = c == 'b' ? 0 : 1;
+					if (!b.isValidMove(m, color)) {
+						throw new IllegalArgumentException("illegal chip at " + x + "" + y + ": " + rows);
+					}
+					b.doMove(m, color);
+				}
+			}
+		}
+		return b;
+	}
+
+	/* Writes the position, with the given color to move, to buf at offset in its binary
+	form: ENCODED_BYTES, big-endian, laid out as the black and white occupancy masks as
+	longs, then the black and white chip counts and the color to move as bytes, and a zero
+	byte. The form has a fixed width, so a file of positions can be read at any index. */
+	protected void writeTo(java.nio.ByteBuffer buf, int offset, int sideToMove) {
+		buf.putLong(offset, chips[0]);
+		buf.putLong(offset + 8, chips[1]);
+		buf.put(offset + 16, (byte) blackcount);
+		buf.put(offset + 17, (byte) whitecount);
+		buf.put(offset + 18, (byte) sideToMove);
+		buf.put(offset + 19, (byte) 0);
+	}
+
+	/* Builds the board written by writeTo at offset in buf, straight from the masks, without
+	replaying moves. The masks and counts are checked against each other and against the
+	squares each color may use, but not for how the position was reached. */
+	static GameBoard readFrom(java.nio.ByteBuffer buf, int offset) {
+		long black = buf.getLong(offset);
+		long white = buf.getLong(offset + 8);
+		if ((black & white) != 0 || (black & FORBIDDEN[0]) != 0 || (white & FORBIDDEN[1]) != 0
+				|| buf.get(offset + 16) != Long.bitCount(black) || buf.get(offset + 17) != Long.bitCount(white)
+				|| Long.bitCount(black) > 10 || Long.bitCount(white) > 10 || (buf.get(offset + 18) & ~1) != 0) {
+			throw new IllegalArgumentException("not an encoded position");
+		}
+		GameBoard b = new GameBoard();
+		for (int color = 0; color <= 1; color++) {
+			long rest = color == 0 ? black : white;
+			while (rest != 0) {
+				int sq = Long.numberOfTrailingZeros(rest);
+				rest &= rest - 1;
+				b.addChip(sq, color);
+			}
+		}
+		return b;
+	}
+
+	/* Returns the color to move in the position written by writeTo at offset in buf. */
+	static int sideToMove(java.nio.ByteBuffer buf, int offset) {
+		return buf.get(offset + 18);
+	}
+
+	/* Returns the chips of the given color that the square sq can see: the nearest chip
+	in each of the eight directions, if it is of that color. */
+	protected long connectionMask(int sq, int color) {
+		long occupied = chips[0] | chips[1];
+		long seen = 0;
+		for (int d = 0; d < 4; d++) {
+			long blockers = RAYS[d][sq] & occupied;
+			if (blockers != 0) {
+				seen |= Long.lowestOneBit(blockers);
+			}
+			blockers = RAYS[d + 4][sq] & occupied;
+			if (blockers != 0) {
+				seen |= Long.highestOneBit(blockers);
+			}
+		}
+		return seen & chips[color];
+	}
+
+	/* Returns, for a move packed by encode, how many of color's chips the moved chip
+	would see plus how many connections between two opponent chips it would cut. The
+	search uses it to try promising moves first. */
+	protected int lineScore(int move, int color) {
+		int sq = moveTo(move);
+		long own = chips[color];
+		if (moveKind(move) == Move.STEP) {
+			own &= ~(1L << moveFrom(move));
+		}
+		long opp = chips[1 - color];
+		long occupied = own | opp;
+		int score = 0;
+		for (int d = 0; d < 4; d++) {
+			long a = Long.lowestOneBit(RAYS[d][sq] & occupied);
+			long b = Long.highestOneBit(RAYS[d + 4][sq] & occupied);
+			if ((a & own) != 0) {
+				score++;
+			}
+			if ((b & own) != 0) {
+				score++;
+			}
+			if ((a & opp) != 0 && (b & opp) != 0) {
+				score++;
+			}
+		}
+		return score;
+	}
+
+	/* Returns the Zobrist key of this position with the given color to move. */
+	protected long hashKey(int color) {
+		return color == 1 ? hashes[IDENTITY] ^ WHITE_TO_MOVE : hashes[IDENTITY];
+	}
+
+	/* Returns the hashKey of the position symmetry s makes of this one, with the given
+	color to move here. */
+	protected long symmetricKey(int s, int color) {
+		return symmetricColor(s, color) == 1 ? hashes[s] ^ WHITE_TO_MOVE : hashes[s];
+	}
+
+	/* Returns the symmetry that takes this position, with the given color to move, to its
+	canonical form: of the positions the symmetries make of it, the one with the smallest
+	key. Equivalent positions share the canonical form, so a table keyed by
+	symmetricKey(canonicalSymmetry(color), color) holds one entry for all of them. Its
+	scores must be from the point of view of the player to move, and its moves mapped by
+	symmetricMove. */
+	protected int canonicalSymmetry(int color) {
+		int best = IDENTITY;
+		long bestKey = hashKey(color);
+		for (int s = 1; s < SYMMETRIES; s++) {
+			long key = symmetricKey(s, color);
+			if (key < bestKey) {
+				best = s;
+				bestKey = key;
+			}
+		}
+		return best;
+	}
+
+	/* The key of the canonical form: the same for this position and every position
+	equivalent to it. */
+	protected long canonicalKey(int color) {
+		return symmetricKey(canonicalSymmetry(color), color);
+	}
+
+	/* Returns the color that symmetry s makes of the given color. */
+	static int symmetricColor(int s, int color) {
+		return s == TRANSPOSE ? 1 - color : color;
+	}
+
+	/* Returns where symmetry s takes a move packed by encode. Since every symmetry is its
+	own inverse, this also takes a move back from the symmetric position. */
+	static int symmetricMove(int s, int move) {
+		if (move == 0) {
+			return 0;
+		}
+		int[] map = SYMMETRIC_SQUARE[s];
+		int to = map[moveTo(move)];
+		return moveKind(move) == Move.STEP ? stepMove(map[moveFrom(move)], to) : addMove(to);
+	}
+
+	/* Packs a move into an int: the kind in bits 12-13, the old square (STEP only) in
+	bits 6-11 and the new square in bits 0-5. 0 means no move. */
+	static int encode(Move m) {
+		if (m.moveKind == Move.ADD) {
+			return addMove(square(m.x1, m.y1));
+		} else if (m.moveKind == Move.STEP) {
+			return stepMove(square(m.x2, m.y2), square(m.x1, m.y1));
+		}
+		return 0;
+	}
+
+	/* Unpacks a move made by encode. */
+	static Move decode(int move) {
+		int to = moveTo(move);
+		if (moveKind(move) == Move.ADD) {
+			return new Move(to >>> 3, to & 7);
+		} else if (moveKind(move) == Move.STEP) {
+			int from = moveFrom(move);
+			return new Move(to >>> 3, to & 7, from >>> 3, from & 7);
+		}
+		return new Move();
+	}
+
+	static int addMove(int to) {
+		return (Move.ADD << 12) | to;
+	}
+
+	static int stepMove(int from, int to) {
+		return (Move.STEP << 12) | (from << 6) | to;
+	}
+
+	static int moveKind(int move) {
+		return move >>> 12;
+	}
+
+	static int moveFrom(int move) {
+		return (move >>> 6) & 63;
+	}
+
+	static int moveTo(int move) {
+		return move & 63;
+	}
+
+	static boolean onBoard(int x, int y) {
+		return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+	}
+
 	/* Takes in a move and color to depending if it's a "step" or "add" move and will perform 
 	the appropriate move onto the gameboard. */
 	protected void performMove(Move m, int color) {
-		if (m.moveKind == 1) {
-			Chip piece = new Chip(color);
-			setPiece(piece, m.x1, m.y1);
-		} else if (m.moveKind == 2) {
-			movePiece(m.x1, m.y1, m.x2, m.y2);
+		if (m.moveKind == Move.QUIT || !isValidMove(m, color)) {
+			return;
 		}
+		doMove(m, color);
+	}
+
+	/* Plays a move without validating it. The search only calls this with moves from
+	generateMoves, and takes every move back with undoMove once it has been explored,
+	so a single board serves the whole search tree. */
+	protected void doMove(Move m, int color) {
+		doMove(encode(m), color);
+	}
+
+	/* Takes back a move made by doMove, restoring the chips and the chip counts. */
+	protected void undoMove(Move m, int color) {
+		undoMove(encode(m), color);
+	}
+
+	/* doMove for a move packed by encode. */
+	protected void doMove(int move, int color) {
+		if (moveKind(move) == Move.STEP) {
+			removeChip(moveFrom(move), color);
+			addChip(moveTo(move), color);
+		} else if (moveKind(move) == Move.ADD) {
+			addChip(moveTo(move), color);
+		}
+	}
+
+	/* undoMove for a move packed by encode. */
+	protected void undoMove(int move, int color) {
+		if (moveKind(move) == Move.STEP) {
+			removeChip(moveTo(move), color);
+			addChip(moveFrom(move), color);
+		} else if (moveKind(move) == Move.ADD) {
+			removeChip(moveTo(move), color);
+		}
+	}
+
+	/* Returns true if both boards hold the same chips and chip counts. Used with assertions
+	enabled (java -ea) to check that undoMove restores the board exactly. */
+	protected boolean sameAs(GameBoard other) {
+		return chips[0] == other.chips[0] && chips[1] == other.chips[1]
+			&& java.util.Arrays.equals(hashes, other.hashes)
+			&& pairs[0] == other.pairs[0] && pairs[1] == other.pairs[1]
+			&& blackcount == other.blackcount && whitecount == other.whitecount;
 	}
 
 	/* Checks if the x,y coordinate has a piece contained in that space or not */
 	protected boolean hasPiece(int x, int y) {
-		if ((x < 0) || (x > 7) || (y < 0) || (y > 7)){
+		if (!onBoard(x, y)) {
 			return false;
 		}
-		if (board[x][y] == null){
-			return false;
-		} else {
-			return true;
+		return ((chips[0] | chips[1]) & (1L << square(x, y))) != 0;
+	}
+
+	/* Returns the color of the chip at the x,y coordinate, or -1 if the space is empty */
+	protected int getColor(int x, int y) {
+		if (!onBoard(x, y)) {
+			return -1;
 		}
+		long bit = 1L << square(x, y);
+		if ((chips[0] & bit) != 0) {
+			return 0;
+		} else if ((chips[1] & bit) != 0) {
+			return 1;
+		}
+		return -1;
 	}
 
 	/* This method gets a chip at the x,y coordinate */
 	protected Chip getPiece(int x, int y) {
-		if (hasPiece(x,y)) {
-			return this.board[x][y];
-		} else {
+		int color = getColor(x, y);
+		if (color < 0) {
 			return null;
 		}
+		return CHIPS[color][square(x, y)];
 	}
 
 
 	/* This sets a chip onto the x,y coordinate of the gameboard */
 	private void addPiece(Chip piece, int x, int y) {
-		this.board[x][y] = piece;
 		piece.x = x;
 		piece.y = y;
-		if (piece.color == 0) {
+		addChip(square(x, y), piece.color);
+	}
+
+	private void addChip(int sq, int color) {
+		updatePairs(sq, color, 1);
+		chips[color] |= 1L << sq;
+		updateHashes(sq, color);
+		if (color == 0) {
 			blackcount++;
 		} else {
 			whitecount++;
 		}
 	}
 
-	/* This sets the piece onto the board if the move is valid*/
-	private void setPiece(Chip piece, int x, int y) {
-		Move m = new Move(x, y);
-		if (isValidMove(m, piece.color)) {
-			addPiece(piece, x, y);
+	/* Adds or removes the chip at sq in the symmetric keys. */
+	private void updateHashes(int sq, int color) {
+		for (int s = 0; s < SYMMETRIES; s++) {
+			hashes[s] ^= SYMMETRIC_ZOBRIST[s][color][sq];
 		}
 	}
 
-	/* This method is only used if it's a "step" move and maintains the correct number of black
-	and white chips on the board */
-	private void movePiece(int x1, int y1, int x2, int y2) {
-		Move m = new Move(x1, y1, x2, y2);
-		Chip piece = getPiece(x2, y2);
-		if (isValidMove(m, piece.color)) {
-			addPiece(piece, x1, y1);
-			if (piece.color == 0) {
-				blackcount--;
-			} else {
-				whitecount--;
+	private void removeChip(int sq, int color) {
+		chips[color] &= ~(1L << sq);
+		updatePairs(sq, color, -1);
+		updateHashes(sq, color);
+		if (color == 0) {
+			blackcount--;
+		} else {
+			whitecount--;
+		}
+	}
+
+	/* Updates the connected pair counts for a chip of the given color being added to
+	(sign 1) or removed from (sign -1) the empty square sq. Along each line through sq,
+	the chip connects to the nearest chips on either side that share its color, and it
+	blocks the connection between those two chips if they share a color with each other. */
+	private void updatePairs(int sq, int color, int sign) {
+		long occupied = chips[0] | chips[1];
+		for (int d = 0; d < 4; d++) {
+			long a = Long.lowestOneBit(RAYS[d][sq] & occupied);
+			long b = Long.highestOneBit(RAYS[d + 4][sq] & occupied);
+			if ((a & chips[color]) != 0) {
+				pairs[color] += sign;
+			}
+			if ((b & chips[color]) != 0) {
+				pairs[color] += sign;
+			}
+			if (a != 0 && b != 0) {
+				int ca = (a & chips[0]) != 0 ? 0 : 1;
+				if ((b & chips[ca]) != 0) {
+					pairs[ca] -= sign;
+				}
 			}
-			this.board[x2][y2] = null;
 		}
 	}
 
@@ -104,36 +516,18 @@ public class GameBoard {
 	/*This returns True if there are more than two chips in a connected group. 
 	Assumes that there is no piece in this (x,y) position. */
 	private boolean hasCluster(int x, int y, int color) {
-		int count = 0;
-		int x1 = 0;
-		int y1 = 0;
-		for (int i = x - 1; i <= x + 1; i++){
-			for (int j = y - 1; j <= y + 1; j++){
-				if (hasPiece(i,j)){
-					if (getPiece(i,j).color == color) {
-						count++;
-						x1 = i;
-						y1 = j;
-					}
-				}
-			}
-		}
+		return hasCluster(square(x, y), color);
+	}
+
+	private boolean hasCluster(int sq, int color) {
+		long own = chips[color];
+		long near = NEIGHBORHOOD[sq] & own;
+		int count = Long.bitCount(near);
 		if (count >= 2) {
 			return true;
 		} else if (count == 1) {
-			int count2 = 0;
-			for (int f = x1 - 1; f <= x1 + 1; f++){
-				for (int k = y1 - 1; k <= y1 + 1; k++){
-					if (hasPiece(f,k)){
-						if (getPiece(f,k).color == color) {
-							count2++;
-						}
-					}
-				}
-			}
-			if (count2 >= 2) {
-				return true;
-			}
+			// the single neighbour counts itself, so 2 means it has a neighbour of its own
+			return Long.bitCount(NEIGHBORHOOD[Long.numberOfTrailingZeros(near)] & own) >= 2;
 		}
 		return false;
 	}
@@ -144,353 +538,359 @@ public class GameBoard {
 	are being made */
 	protected boolean isValidMove(Move m, int color) {
 		// check if an ADD move is valid
-		if (m.moveKind == 1) {
+		if (m.moveKind == Move.ADD) {
 			// can't do an add move if there are already 10 chips on the board
 			if ((color == 0 && blackcount >= 10) || (color == 1 && whitecount >= 10)) {
 				return false;
 			}
-			// corners
-			if (m.x1 == 0 && m.y1 == 0){
-				return false;
-			} if (m.x1 == 0 && m.y1 == 7){
-				return false;
-			} if (m.x1 == 7 && m.y1 == 0){
-				return false;
-			} if (m.x1 == 7 && m.y1 == 7){
-				return false;
-			} 
-			// check if there is a piece in this position
-			if (hasPiece(m.x1, m.y1)){
-				return false;
-			} 
-			// check if there is a cluster of 3
-			if (hasCluster(m.x1, m.y1, color)){
-				return false;
-			}
-			// can't put chips in opponent's goal zone
-			if (color == 0 && (m.x1 == 0 || m.x1 == 7) && m.y1 >= 1 && m.y1 <= 6){ 
-				return false;
-			} if (color == 1 && (m.y1 == 0 || m. y1 == 7) && m.x1 >= 1 && m.x1 <= 6) {
+			if (!onBoard(m.x1, m.y1)) {
 				return false;
 			}
-
 		}
 		// check if a STEP move is valid
-		if (m.moveKind == 2) {
+		else if (m.moveKind == Move.STEP) {
 			// can't do a step move if there are <10 chips on the board
 			if ((color == 0 && blackcount < 10) || (color == 1 && whitecount < 10)) { 
 				return false;
 			}
-			// can't step move to the same place
-			if (m.x1 == m.x2 && m.y1 == m.y2) {
+			if (!onBoard(m.x1, m.y1) || !onBoard(m.x2, m.y2)) {
 				return false;
 			}
-			// check that there is a chip in (x1, y1) and no chip in (x2, y2)
-			if (hasPiece(m.x1,m.y1) || !(hasPiece(m.x2, m.y2))) {
+			// can't step move to the same place
+			if (m.x1 == m.x2 && m.y1 == m.y2) {
 				return false;
 			}
 			// can only move pieces of your color
-			if (getPiece(m.x2, m.y2).color != color) {
-				return false;
-			}
-			// corners
-			if (m.x1 == 0 && m.y1 == 0){
-				return false;
-			} if (m.x1 == 0 && m.y1 == 7){
-				return false;
-			} if (m.x1 == 7 && m.y1 == 0){
-				return false;
-			} if (m.x1 == 7 && m.y1 == 7){
-				return false;
-			} 
-			// check if there is a cluster of 3
-			if (hasCluster(m.x1, m.y1, color)){
-				return false;
-			}
-			// can't put chips in opponent's goal zone
-			if (color == 0 && (m.x1 == 0 || m.x1 == 7) && m.y1 >= 1 && m.y1 <= 6){ 
-				return false;
-			} if (color == 1 && (m.y1 == 0 || m. y1 == 7) && m.x1 >= 1 && m.x1 <= 6) {
+			if ((chips[color] & (1L << square(m.x2, m.y2))) == 0) {
 				return false;
 			}
+		} else {
+			return true;
+		}
+		long target = 1L << square(m.x1, m.y1);
+		// check if there is a piece in this position
+		if (((chips[0] | chips[1]) & target) != 0) {
+			return false;
+		}
+		// corners, and can't put chips in opponent's goal zone
+		if ((FORBIDDEN[color] & target) != 0) {
+			return false;
+		}
+		// check if there is a cluster of 3
+		if (hasCluster(m.x1, m.y1, color)) {
+			return false;
 		}
 		// returns true if move m is valid.
 		return true;
 	}
 
-	/* This method iterates through all possible combinations depending 
-	if the move is an add move or a step move. After checking if it's a 
-	valid move, then make a new Move object and insert it in the back of 
-	your DList. */
+	/* This method finds all valid moves for the given color and returns them as
+	Move objects in a DList. The search uses generateMoves instead. */
 	protected DList calculateValidMoves(int color) {
 		DList validmoves = new DList();
-		if ((color == 0 && blackcount < 10) || (color == 1 && whitecount < 10)) { //only add moves
-			for (int x = 0; x <= 7; x++) {
-	          	for (int y = 0; y <= 7; y++) {
-	          		Move m = new Move(x, y);
-	          		if (isValidMove(m, color)) {
-	          			validmoves.insertBack(m);
-	          		}
-	          	}
-	        }
-	    }
-	    else if ((color == 0 && blackcount == 10) || (color == 1 && whitecount == 10)) { //only step move
-	    	for (int x1 = 0; x1 <= 7; x1++) { // looping through all possible combinations of step moves
-	    		for (int x2 = 0; x2 <= 7; x2++) {
-	    			for (int y1 = 0; y1 <= 7; y1++) {
-	    				for (int y2 = 0; y2 <= 7; y2++) {
-	    					Move m = new Move(x1, y1, x2, y2);
-	    					if (isValidMove(m, color)) {
-	    						validmoves.insertBack(m);
-	    					}
-	    				}
-	    			}
-	    		}
-	    	}
-		} 
+		int[] moves = new int[MAX_MOVES];
+		int n = generateMoves(color, moves);
+		for (int i = 0; i < n; i++) {
+			validmoves.insertBack(decode(moves[i]));
+		}
 		return validmoves;
 	}
 
-	/* This method iterates right, up, left, down, and all diagonals and finds 
-	any chips connected to this chip. Then it inserts the piece in the 
-	back of a DList containing all the connections. */
-	protected DList findConnections(Chip piece) {
-		DList connected = new DList();
-		int x = piece.x;
-		int y = piece.y;
-		Chip p;
-		while (x < SIZE - 1) { //right
-			x++;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+	/* Writes every valid move for the given color into moves, packed as by encode, and
+	returns how many there are. moves must have room for MAX_MOVES. ADD moves go to every
+	empty square the color may use that doesn't form a cluster. STEP moves pair each of
+	the color's chips with each of those squares; as in isValidMove, the cluster test sees
+	the moving chip on its old square. */
+	protected int generateMoves(int color, int[] moves) {
+		return generateMoves(color, moves, 0);
+	}
+
+	/* Appends every valid move for the given color to moves and returns how many there
+	are. The list grows if it has to, so a list that is cleared and reused, or a stack
+	holding the moves of every ply of a search, allocates nothing once it is big enough. */
+	protected int generateMoves(int color, IntList moves) {
+		int start = moves.size();
+		moves.ensureCapacity(start + MAX_MOVES);
+		int n = generateMoves(color, moves.array(), start);
+		moves.setSize(start + n);
+		return n;
+	}
+
+	/* generateMoves writing from moves[start] on. */
+	private int generateMoves(int color, int[] moves, int start) {
+		int count = color == 0 ? blackcount : whitecount;
+		if (count > 10) {
+			return 0;
+		}
+		long targets = ~(chips[0] | chips[1] | FORBIDDEN[color]);
+		int n = start;
+		if (count == 10) {
+			long legal = 0;
+			while (targets != 0) {
+				int to = Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+				if (!hasCluster(to, color)) {
+					legal |= 1L << to;
 				}
 			}
-		}
-		x = piece.x;
-
-		while (y < SIZE - 1) { //up
-			y++;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+			long sources = chips[color];
+			while (sources != 0) {
+				int from = Long.numberOfTrailingZeros(sources);
+				sources &= sources - 1;
+				long rest = legal;
+				while (rest != 0) {
+					int to = Long.numberOfTrailingZeros(rest);
+					rest &= rest - 1;
+					moves[n++] = stepMove(from, to);
 				}
 			}
-		}
-		y = piece.y;
-
-		while (x > 0) { //left
-			x--;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+		} else {
+			while (targets != 0) {
+				int to = Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+				if (!hasCluster(to, color)) {
+					moves[n++] = addMove(to);
 				}
 			}
 		}
-		x = piece.x;
+		return n - start;
+	}
 
-		while (y > 0) { //down
-			y--;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+	/* Returns the squares color could move a chip to and complete a network, or 0 if it
+	has none; with first set, it stops at the first such square. moves is scratch space
+	for generateMoves. Moves are only played out when they pass two bitmask tests. First,
+	ignoring the rules about turns and length, the chips must be joined from goal to goal
+	once the move is made. Second, the chip must see enough of color's chips to be part of
+	a network: one if it lands in a goal, two elsewhere. The second test is skipped for a
+	STEP move that leaves a gap between two of color's chips, since the network could run
+	through the gap instead of through the moved chip. */
+	protected long winningSquares(int color, int[] moves, boolean first) {
+		long own = chips[color];
+		if (Long.bitCount(own) < 5) {
+			return 0;
+		}
+		long opp = chips[1 - color];
+		long result = 0;
+		int lastFrom = -1;
+		boolean gap = false;
+		long mine = own;
+		long fromStart = reach(mine & START_GOAL[color], mine, mine | opp);
+		long fromEnd = reach(mine & END_GOAL[color], mine, mine | opp);
+		int n = generateMoves(color, moves);
+		for (int i = 0; i < n; i++) {
+			int m = moves[i];
+			int to = moveTo(m);
+			if ((result & (1L << to)) != 0) {
+				continue;
+			}
+			if (moveKind(m) == Move.STEP && moveFrom(m) != lastFrom) {
+				// the chips as they are once this chip has left
+				lastFrom = moveFrom(m);
+				mine = own & ~(1L << lastFrom);
+				gap = bridges(lastFrom, mine, mine | opp);
+				fromStart = reach(mine & START_GOAL[color], mine, mine | opp);
+				fromEnd = reach(mine & END_GOAL[color], mine, mine | opp);
+			}
+			long bit = 1L << to;
+			long seen = sight(to, mine, mine | opp);
+			if (gap && (fromStart & fromEnd) != 0) {
+				// joined without the moved chip; only playing it out can tell
+			} else {
+				boolean start = (seen & fromStart) != 0 || (bit & START_GOAL[color]) != 0;
+				boolean end = (seen & fromEnd) != 0 || (bit & END_GOAL[color]) != 0;
+				int needed = (GOALS[color] & bit) != 0 ? 1 : 2;
+				if (!start || !end || (!gap && Long.bitCount(seen) < needed)) {
+					continue;
 				}
 			}
-		}
-		y = piece.y;
-
-		while (y < SIZE - 1 && x < SIZE - 1) {
-			x++;
-			y++;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+			// hasNetwork only reads the chips, so there is no need for a full doMove
+			chips[color] = mine | bit;
+			boolean network = hasNetwork(color);
+			chips[color] = own;
+			if (network) {
+				result |= bit;
+				if (first) {
+					return result;
 				}
 			}
 		}
-		x = piece.x;
-		y = piece.y;
+		return result;
+	}
 
-		while (y > 0 && x < SIZE - 1) {
-			x++;
-			y--;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
-				}
-			}
+	/* Returns the chips of own joined to the chips in seeds by chains of chips of own
+	that see each other, given the occupied squares. */
+	private static long reach(long seeds, long own, long occupied) {
+		long reached = seeds;
+		long frontier = seeds;
+		while (frontier != 0) {
+			int sq = Long.numberOfTrailingZeros(frontier);
+			frontier &= frontier - 1;
+			long next = sight(sq, own, occupied) & ~reached;
+			reached |= next;
+			frontier |= next;
 		}
-		x = piece.x;
-		y = piece.y;
+		return reached;
+	}
 
-		while (y < SIZE - 1 && x > 0) {
-			x--;
-			y++;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
-				}
+	/* Returns the chips of own that the square sq sees, given the occupied squares. */
+	private static long sight(int sq, long own, long occupied) {
+		long seen = 0;
+		for (int d = 0; d < 4; d++) {
+			seen |= Long.lowestOneBit(RAYS[d][sq] & occupied);
+			seen |= Long.highestOneBit(RAYS[d + 4][sq] & occupied);
+		}
+		return seen & own;
+	}
+
+	/* Returns true if the empty square sq lies directly between two chips of own on
+	some line. */
+	private static boolean bridges(int sq, long own, long occupied) {
+		for (int d = 0; d < 4; d++) {
+			long a = Long.lowestOneBit(RAYS[d][sq] & occupied);
+			long b = Long.highestOneBit(RAYS[d + 4][sq] & occupied);
+			if ((a & own) != 0 && (b & own) != 0) {
+				return true;
 			}
 		}
-		x = piece.x;
-		y = piece.y;
+		return false;
+	}
 
-		while (y > 0 && x > 0) {
-			x--;
-			y--;
-			if (hasPiece(x, y)) {
-				p = getPiece(x, y);
-				if (p.color == piece.color) {
-					connected.insertBack(p);
-					break;
-				} else {
-					break;
+	/* Returns the empty squares between two of color's chips that see each other: a chip
+	of the other color on any of them cuts a connection. */
+	protected long cuttingSquares(int color) {
+		long own = chips[color];
+		long occupied = chips[0] | chips[1];
+		long result = 0;
+		long rest = own;
+		while (rest != 0) {
+			int sq = Long.numberOfTrailingZeros(rest);
+			rest &= rest - 1;
+			for (int d = 0; d < 4; d++) {
+				long ray = RAYS[d][sq];
+				long a = Long.lowestOneBit(ray & occupied);
+				if ((a & own) != 0) {
+					result |= ray & ~(RAYS[d][Long.numberOfTrailingZeros(a)] | a);
 				}
 			}
 		}
-		x = piece.x;
-		y = piece.y;
+		return result;
+	}
 
+	/* This method finds the chips connected to this chip: the nearest chip right, up,
+	left, down and along the diagonals, when it is the same color. It returns them in a
+	DList; the search and eval use connectionMask and countConnections, which don't
+	allocate. */
+	protected DList findConnections(Chip piece) {
+		DList connected = new DList();
+		long seen = connectionMask(square(piece.x, piece.y), piece.color);
+		while (seen != 0) {
+			int sq = Long.numberOfTrailingZeros(seen);
+			seen &= seen - 1;
+			connected.insertBack(CHIPS[piece.color][sq]);
+		}
 		return connected;
 	}
 
-	private boolean inGoal(Chip c) {
-		if (c.color == 0 && (c.y == 7 || c.y == 0)){
-			return true;
-		}
-		if (c.color == 1 && (c.x == 7 || c.x == 0)) {
-			return true;
-		}
-		return false;
+	/* Returns the number of connections of all chips of the given color, counting each
+	connected pair once from each end, as summing findConnections over the chips would.
+	This reads the pair count that addChip and removeChip keep up to date. */
+	protected int countConnections(int color) {
+		assert 2 * pairs[color] == recountConnections(color) : "connection count out of date";
+		return 2 * pairs[color];
 	}
 
-	private boolean inEndGoal(Chip c) {
-		if (c.color == 0 && (c.y == 7)){
-			return true;
-		}
-		if (c.color == 1 && (c.x == 7)) {
-			return true;
+	/* Counts the connections of color's chips from scratch. */
+	private int recountConnections(int color) {
+		int count = 0;
+		long rest = chips[color];
+		while (rest != 0) {
+			int sq = Long.numberOfTrailingZeros(rest);
+			rest &= rest - 1;
+			count += Long.bitCount(connectionMask(sq, color));
 		}
-		return false;
+		return count;
 	}
 
-	/* This method correctly identifies if there is a network on the gameboard */
+	/* This method correctly identifies if there is a network on the gameboard: a path of
+	at least six chips from the top row to the bottom row (black) or from the left column
+	to the right column (white), turning at every chip, that touches no goal area on the
+	way. */
 	protected boolean hasNetwork(int color) {
-		if (color == 0) { // loop through starting chips in top row (black's goal zone)
-			for (int i = 1; i <= 6; i++) {
-				if (hasPiece(i, 0)) {
-					boolean network = search(getPiece(i,0));
-					if (network) {
-						return true;
-					}
-				}
-			}
+		long own = chips[color];
+		// no network without six chips and a chip in each goal
+		if (Long.bitCount(own) < 6 || (own & START_GOAL[color]) == 0 || (own & END_GOAL[color]) == 0) {
 			return false;
 		}
-
-		else { // loop through starting chips in left column (white's goal zone)
-			for (int i = 1; i <= 6; i++) {
-				if (hasPiece(0,i)) {
-					boolean network = search(getPiece(0,i));
-					if (network) {
-						return true;
-					}
-				}
-			}
-			return false;
+		// which of our chips each of our chips can see
+		long rest = own;
+		while (rest != 0) {
+			int sq = Long.numberOfTrailingZeros(rest);
+			rest &= rest - 1;
+			adjacency[sq] = connectionMask(sq, color);
 		}
-		
-	}
-
-	private boolean search(Chip vertex) {
-		DList queue = new DList(); // a list of networkhelper objects
-		DList v = new DList(); // a list of visited chips
-		v.insertBack(vertex);
-		NetworkHelper first = new NetworkHelper(vertex, v);
-		queue.insertBack(first);
-		while (!queue.isEmpty()) {
-			Object o = queue.removeFront();
-			NetworkHelper curr = (NetworkHelper)o; //removeFront removes the first item in the list & returns it
-			DList connections = findConnections(curr.chip); // a list of chip objects (connections)
-			DList visit = curr.visited.copy();
-
-			DListNode c = connections.head.next;
-			while (c.item != null) { // looping through list of valid connections of curr.chip
-				Chip x = (Chip)c.item;
-
-				if (!visit.contains(c.item) && changeDirection(curr.visited, x)) {
-					DList visited2 = visit.copy();
-					visited2.insertBack(c.item); // add this chip to visited
-
-					if (visited2.length() >= 6 && inEndGoal(x)) {
-						return true;
-					}
-					if (visited2.length() < 6 && inGoal(x)) {
-						c = c.next;
-						continue;
-					}
-					NetworkHelper item = new NetworkHelper(x, visited2);
-					queue.insertBack(item);
-				}
-				c = c.next;
+		// loop through starting chips in the top row (black) or left column (white)
+		long starts = own & START_GOAL[color];
+		while (starts != 0) {
+			int sq = Long.numberOfTrailingZeros(starts);
+			starts &= starts - 1;
+			if (search(sq, 1L << sq, 1, -1, color)) {
+				return true;
 			}
 		}
 		return false;
 	}
 
-	private boolean changeDirection(DList visited, Chip chip) {
-		// return true if chips are changing direction
-		if (visited.length() < 2) {
-			return true;
-		}
-		DListNode last = visited.back();
-		DListNode last2 = visited.prev(last);
-		Chip lastchip = (Chip)last.item;
-		Chip lastchip2 = (Chip)last2.item;
-		if (lastchip.x == lastchip2.x && chip.x == lastchip.x) {
-			return false;
-		}
-		if (lastchip.y == lastchip2.y && chip.y == lastchip.y) {
+	/* Returns true if the move would give color a network. The goal and chip-count tests
+	rule out most moves without playing them. */
+	protected boolean completesNetwork(Move m, int color) {
+		return completesNetwork(encode(m), color);
+	}
+
+	/* completesNetwork for a move packed by encode. */
+	protected boolean completesNetwork(int move, int color) {
+		long own = chips[color];
+		if (moveKind(move) == Move.STEP) {
+			own &= ~(1L << moveFrom(move));
+		} else if (moveKind(move) != Move.ADD) {
 			return false;
 		}
-		int shiftx1 = lastchip.x - lastchip2.x;
-		int shifty1 = lastchip.y - lastchip2.y;
-		int shiftx2 = lastchip.x - chip.x;
-		int shifty2 = lastchip.y - chip.y;
-		if (shiftx1 == shifty1 && shiftx2 == shifty2) {
+		own |= 1L << moveTo(move);
+		if (Long.bitCount(own) < 6 || (own & START_GOAL[color]) == 0 || (own & END_GOAL[color]) == 0) {
 			return false;
 		}
-		return true;
+		doMove(move, color);
+		boolean network = hasNetwork(color);
+		undoMove(move, color);
+		return network;
 	}
 
+	/* Depth-first search for the rest of a network from the chip at sq, which ends a path
+	of the given length whose chips are the bits of visited. line is the LINE class of the
+	connection into sq, or -1 for the first chip. */
+	private boolean search(int sq, long visited, int length, int line, int color) {
+		long next = adjacency[sq] & ~visited;
+		while (next != 0) {
+			int to = Long.numberOfTrailingZeros(next);
+			next &= next - 1;
+			int toLine = LINE[(sq << 6) | to];
+			// a network turns at every chip. As in the original path check, only the
+			// anti-diagonal is not treated as a straight line.
+			if (toLine == line && toLine != ANTI_DIAGONAL) {
+				continue;
+			}
+			long bit = 1L << to;
+			if (length + 1 >= 6 && (bit & END_GOAL[color]) != 0) {
+				return true;
+			}
+			if (length + 1 < 6 && (bit & GOALS[color]) != 0) {
+				continue;
+			}
+			if (search(to, visited | bit, length + 1, toLine, color)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
 	public static void main(String[] args) {
 		// TESTS
@@ -764,4 +1164,4 @@ public class GameBoard {
 		
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
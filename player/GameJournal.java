@@ -0,0 +1,247 @@
+/* GameJournal.java */
+
+package player;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  An append-only, memory-mapped record of games: one fixed-size record per
+ *  move, holding the move and the position it leads to.  Reading a position
+ *  back is a few loads from the mapping (GameBoard.readFrom), with no moves
+ *  to replay or check, so replay, recovery and offline analysis can visit
+ *  millions of positions at any index.
+ *
+ *  Layout, big-endian: a header of the int MAGIC, the int VERSION, the int
+ *  RECORD_SIZE and reserved bytes up to HEADER_SIZE, then the records.  A
+ *  record is the position after the move in GameBoard's ENCODED_BYTES form,
+ *  then the game number and the packed move (GameBoard.encode, 0 for a record
+ *  of a starting position) as ints, the ply as a short, and the short MARK.
+ *
+ *  The file grows a chunk of records at a time, and the tail of the last
+ *  chunk is zeros.  MARK is written after the rest of the record, so when a
+ *  journal is opened the records are the leading run with the mark: a record
+ *  cut short by a crash is left out and will be written over.  Appends go to
+ *  the page cache, which survives the process; force() flushes them to disk.
+ */
+public class GameJournal implements AutoCloseable {
+
+  public static final int MAGIC = 0x4E4A4E31; // "NJN1"
+  public static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int RECORD_SIZE = 32;
+  static final short MARK = 0x4A52; // "JR"
+  // records per mapped chunk: 32 MB, well under the 2 GB a mapping can hold
+  static final int CHUNK_RECORDS = 1 << 20;
+  static final long CHUNK_SIZE = (long) CHUNK_RECORDS * RECORD_SIZE;
+
+  private final FileChannel channel;
+  private final boolean writable;
+  private final List<MappedByteBuffer> chunks = new ArrayList<>();
+  private long size; // records in the journal
+
+  private GameJournal(FileChannel channel, boolean writable) throws IOException {
+    this.channel = channel;
+    this.writable = writable;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    if (channel.size() == 0 && writable) {
+      header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+      header.limit(HEADER_SIZE);
+      channel.write(header, 0);
+    } else {
+      channel.read(header, 0);
+      if (header.getInt(0) != MAGIC) {
+        throw new IllegalArgumentException("not a game journal");
+      }
+      if (header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+        throw new IllegalArgumentException("unsupported journal version " + header.getInt(4));
+      }
+    }
+    long capacity = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+    for (long i = 0; i < capacity; i += CHUNK_RECORDS) {
+      map(chunks.size());
+    }
+    size = recover(capacity);
+  }
+
+  // Opens the journal at path for appending, creating it if there is none.
+  public static GameJournal open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE);
+    try {
+      return new GameJournal(channel, true);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // Opens the journal at path for reading only.
+  public static GameJournal openReadOnly(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new GameJournal(channel, false);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // Maps chunk k, which extends the file if it is writable.
+  private void map(int k) throws IOException {
+    long start = HEADER_SIZE + k * CHUNK_SIZE;
+    long length = writable ? CHUNK_SIZE : Math.min(CHUNK_SIZE, channel.size() - start);
+    MappedByteBuffer chunk = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+        : FileChannel.MapMode.READ_ONLY, start, length);
+    chunk.order(ByteOrder.BIG_ENDIAN);
+    chunks.add(chunk);
+  }
+
+  // Returns the number of records with the mark, which form a prefix of the
+  // capacity slots: a binary search for its end.
+  private long recover(long capacity) {
+    long lo = 0;
+    long hi = capacity;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (chunk(mid).getShort(offset(mid) + 30) == MARK) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private ByteBuffer chunk(long i) {
+    return chunks.get((int) (i / CHUNK_RECORDS));
+  }
+
+  private static int offset(long i) {
+    return (int) (i % CHUNK_RECORDS) * RECORD_SIZE;
+  }
+
+  // Appends a record of the move made at the given ply of a game, and of the
+  // position board is in after it with sideToMove to move.  move is packed
+  // by GameBoard.encode, or 0 for a starting position.  Returns the index of
+  // the record.
+  public synchronized long append(int game, int ply, int move, GameBoard board, int sideToMove)
+      throws IOException {
+    if (!writable) {
+      throw new IllegalStateException("journal is read-only");
+    }
+    if (size == (long) chunks.size() * CHUNK_RECORDS) {
+      map(chunks.size());
+    }
+    ByteBuffer chunk = chunk(size);
+    int at = offset(size);
+    board.writeTo(chunk, at, sideToMove);
+    chunk.putInt(at + 20, game);
+    chunk.putInt(at + 24, move);
+    chunk.putShort(at + 28, (short) ply);
+    chunk.putShort(at + 30, MARK); // last, so a torn record has no mark
+    return size++;
+  }
+
+  // append for a Move.
+  public long append(int game, int ply, Move move, GameBoard board, int sideToMove) throws IOException {
+    return append(game, ply, move == null ? 0 : GameBoard.encode(move), board, sideToMove);
+  }
+
+  // Returns the number of records.
+  public synchronized long size() {
+    return size;
+  }
+
+  public int game(long i) {
+    return record(i).getInt(offset(i) + 20);
+  }
+
+  // Returns one more than the highest game number in the journal, or 0 if it
+  // is empty.  Games played at the same time interleave their records, so
+  // the last record needn't be from the highest-numbered game: this reads
+  // them all.
+  public int nextGame() {
+    int next = 0;
+    long n = size();
+    for (long i = 0; i < n; i++) {
+      next = Math.max(next, game(i) + 1);
+    }
+    return next;
+  }
+
+  // Returns the packed move of record i, or 0 for a starting position.
+  public int move(long i) {
+    return record(i).getInt(offset(i) + 24);
+  }
+
+  public int ply(long i) {
+    return record(i).getShort(offset(i) + 28);
+  }
+
+  // Returns the occupancy mask of color in the position of record i.
+  public long chips(long i, int color) {
+    return record(i).getLong(offset(i) + 8 * color);
+  }
+
+  public int sideToMove(long i) {
+    return GameBoard.sideToMove(record(i), offset(i));
+  }
+
+  // Rebuilds the position of record i.
+  public GameBoard board(long i) {
+    return GameBoard.readFrom(record(i), offset(i));
+  }
+
+  private ByteBuffer record(long i) {
+    if (i < 0 || i >= size()) {
+      throw new IndexOutOfBoundsException("record " + i + " of " + size());
+    }
+    return chunk(i);
+  }
+
+  // Flushes the records appended so far to disk.
+  public synchronized void force() {
+    if (writable) {
+      for (MappedByteBuffer chunk : chunks) {
+        chunk.force();
+      }
+    }
+  }
+
+  public synchronized void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  // Prints what a journal holds, and how fast its positions read back.
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("usage: java player.GameJournal FILE");
+      System.exit(2);
+    }
+    try (GameJournal journal = openReadOnly(Paths.get(args[0]))) {
+      long n = journal.size();
+      long start = System.nanoTime();
+      java.util.Set<Integer> games = new java.util.HashSet<>();
+      long chips = 0;
+      for (long i = 0; i < n; i++) {
+        games.add(journal.game(i));
+        GameBoard b = journal.board(i);
+        chips += b.blackcount + b.whitecount;
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%d records from %d games, %.1f chips a position; read in %.2f s,"
+          + " %.0f positions/s", n, games.size(), n == 0 ? 0 : (double) chips / n, seconds, n / seconds));
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+/* IntList.java */
+
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A growable list of ints in one array, for the places where a DList of
+ *  boxed items would allocate a node per item.  clear() keeps the array, so
+ *  a list that is reused, say one per search thread, stops allocating once
+ *  it has grown to the largest size it is asked to hold.
+ *
+ *  array() exposes the backing array for loops that can't afford a call per
+ *  item.  It is only valid until the list next grows.
+ */
+public class IntList {
+
+  protected int[] items;
+  protected int size;
+
+  public IntList() {
+    this(16);
+  }
+
+  public IntList(int capacity) {
+    items = new int[Math.max(capacity, 1)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // Empties the list without giving up its array.
+  public void clear() {
+    size = 0;
+  }
+
+  public int get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+    return items[i];
+  }
+
+  public void set(int i, int value) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+    items[i] = value;
+  }
+
+  public void add(int value) {
+    if (size == items.length) {
+      grow(size + 1);
+    }
+    items[size++] = value;
+  }
+
+  // Removes and returns the last item.
+  public int removeLast() {
+    if (size == 0) {
+      throw new IllegalStateException("empty list");
+    }
+    return items[--size];
+  }
+
+  // Removes the item at i by moving the last item into its place, so the
+  // order of the rest isn't kept.
+  public int swapRemove(int i) {
+    int value = get(i);
+    items[i] = items[--size];
+    return value;
+  }
+
+  public int indexOf(int value) {
+    for (int i = 0; i < size; i++) {
+      if (items[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public boolean contains(int value) {
+    return indexOf(value) >= 0;
+  }
+
+  // Makes room for at least capacity items.
+  public void ensureCapacity(int capacity) {
+    if (capacity > items.length) {
+      grow(capacity);
+    }
+  }
+
+  // Sets the size directly, after items have been written into array(); the
+  // new size must fit in the array.
+  public void setSize(int size) {
+    if (size < 0 || size > items.length) {
+      throw new IndexOutOfBoundsException("size " + size + ", capacity " + items.length);
+    }
+    this.size = size;
+  }
+
+  public int[] array() {
+    return items;
+  }
+
+  public int[] toArray() {
+    return Arrays.copyOf(items, size);
+  }
+
+  private void grow(int capacity) {
+    items = Arrays.copyOf(items, Math.max(capacity, 2 * items.length));
+  }
+
+  public String toString() {
+    StringBuilder s = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        s.append(", ");
+      }
+      s.append(items[i]);
+    }
+    return s.append(']').toString();
+  }
+
+}
@@ -0,0 +1,48 @@
+/* IntStack.java */
+
+package player;
+
+/**
+ *  A stack of ints that a recursive search can share between its levels.
+ *  Each level marks the top, pushes what it needs (typically the moves it
+ *  generated) and releases back to the mark before it returns, so one stack
+ *  holds the moves of every level of the current line and nothing is
+ *  allocated per node.  The levels below can grow the stack, so a level reads
+ *  its items back with get() rather than keeping array().
+ */
+public class IntStack extends IntList {
+
+  public IntStack() {
+    super();
+  }
+
+  public IntStack(int capacity) {
+    super(capacity);
+  }
+
+  public void push(int value) {
+    add(value);
+  }
+
+  public int pop() {
+    return removeLast();
+  }
+
+  public int peek() {
+    if (size == 0) {
+      throw new IllegalStateException("empty stack");
+    }
+    return items[size - 1];
+  }
+
+  // Returns the top of the stack, to be passed to release().
+  public int mark() {
+    return size;
+  }
+
+  // Pops everything pushed since mark() returned top.
+  public void release(int top) {
+    setSize(top);
+  }
+
+}
@@ -0,0 +1,124 @@
+/* LatencyHistogram.java */
+
+package player;
+
+/**
+ *  A histogram of latencies in nanoseconds, for percentiles without keeping
+ *  every sample.  Buckets are spaced logarithmically, eight to each power of
+ *  two, so a percentile is reported to within about 6% of the real value
+ *  whatever the range; the exact maximum is kept as well.  Recording is a
+ *  couple of shifts and an increment, and never allocates.
+ *
+ *  All methods are synchronized, so one histogram can be recorded into from
+ *  many threads and read from any.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // values below SUB_BUCKETS get a bucket each; each power of two above has SUB_BUCKETS
+  private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BITS) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long total;
+  private long max;
+
+  public synchronized void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts[bucket(nanos)]++;
+    count++;
+    total += nanos;
+    max = Math.max(max, nanos);
+  }
+
+  // Adds everything recorded in other to this histogram.
+  public void add(LatencyHistogram other) {
+    long[] otherCounts;
+    long otherCount;
+    long otherTotal;
+    long otherMax;
+    synchronized (other) {
+      otherCounts = other.counts.clone();
+      otherCount = other.count;
+      otherTotal = other.total;
+      otherMax = other.max;
+    }
+    synchronized (this) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += otherCounts[i];
+      }
+      count += otherCount;
+      total += otherTotal;
+      max = Math.max(max, otherMax);
+    }
+  }
+
+  public synchronized void clear() {
+    java.util.Arrays.fill(counts, 0);
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  public synchronized long count() {
+    return count;
+  }
+
+  public synchronized long max() {
+    return max;
+  }
+
+  public synchronized double mean() {
+    return count == 0 ? 0 : (double) total / count;
+  }
+
+  // Returns the latency that a fraction q (0 to 1) of the samples are at or
+  // below, or 0 if there are none.
+  public synchronized long percentile(double q) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(q * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(middle(i), max);
+      }
+    }
+    return max;
+  }
+
+  private static int bucket(long v) {
+    if (v < SUB_BUCKETS) {
+      return (int) v;
+    }
+    int e = 63 - Long.numberOfLeadingZeros(v); // at least SUB_BITS
+    int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (e - SUB_BITS) * SUB_BUCKETS + sub;
+  }
+
+  // Returns the middle of the values that go in bucket i.
+  private static long middle(int i) {
+    if (i < SUB_BUCKETS) {
+      return i;
+    }
+    int shift = (i - SUB_BUCKETS) / SUB_BUCKETS;
+    long low = (long) (SUB_BUCKETS + (i - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+    return low + ((1L << shift) >>> 1);
+  }
+
+  // Returns the count, and the mean, percentiles and maximum in milliseconds.
+  public synchronized String summary() {
+    return String.format("n %d, mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f ms", count,
+        mean() / 1e6, percentile(0.5) / 1e6, percentile(0.9) / 1e6, percentile(0.99) / 1e6, max / 1e6);
+  }
+
+  public String toString() {
+    return summary();
+  }
+
+}
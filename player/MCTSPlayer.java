@@ -0,0 +1,468 @@
+/* MCTSPlayer.java */
+
+package player;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  A Network player that chooses its moves by Monte Carlo tree search rather
+ *  than by alpha-beta: no evaluation function, only games played out to the
+ *  end from the positions in a growing tree, with UCT deciding which branch
+ *  the next playout goes down.  It plays by the same GameBoard rules and
+ *  move generation as MachinePlayer, and needs no depth, so it doesn't mind
+ *  the wide trees of the STEP phase the way a fixed-depth search does.
+ *
+ *  Each move is searched for a time limit, a number of playouts, or both,
+ *  whichever runs out first.  A playout picks each move as the best of a few
+ *  random ones by GameBoard.lineScore (one is uniform random play) until a
+ *  network is made, and undoes every move with undoMove when it is done, so
+ *  it allocates nothing.  A random game almost always ends in a network
+ *  within a few dozen plies; one that reaches MAX_PLAYOUT_PLIES counts as a
+ *  draw.
+ *
+ *  The tree lives in flat arrays sized once, a node per move, with the
+ *  children of a node side by side.  Several threads can search it at once.
+ *  Each has its own board and moves down from the root, adding a virtual
+ *  loss to each node it passes, so the threads after it see that line as
+ *  worse and spread out over others; the loss is taken back when the result
+ *  of the playout is added.  A node's visit count and reward are packed in
+ *  one long so both change in a single atomic add, and a leaf is expanded by
+ *  the one thread that wins a compare-and-set on its state.  Once the arrays
+ *  are full the tree stops growing and playouts start from its leaves.  The
+ *  tree is rebuilt for every move.
+ */
+public class MCTSPlayer extends Player {
+
+  // the UCT exploration constant for rewards from 0 to 1; below the usual
+  // square root of 2, which did worse against MachinePlayer
+  static final double DEFAULT_EXPLORATION = 0.7;
+  // 2^20 nodes, 24MB per player
+  static final int DEFAULT_NODE_BITS = 20;
+  // a leaf is expanded once it has been visited this many times
+  static final int EXPAND_VISITS = 2;
+  // a playout that hasn't ended after this many plies is a draw
+  static final int MAX_PLAYOUT_PLIES = 200;
+  // the clock is read once every this many playouts, plus one
+  static final int CLOCK_CHECK_MASK = 15;
+
+  // node states
+  static final int LEAF = 0;
+  static final int EXPANDING = 1;
+  static final int EXPANDED = 2;
+
+  // rewards, in half points, to the player who made a move
+  static final int LOSS = 0;
+  static final int DRAW = 1;
+  static final int WIN = 2;
+
+  protected int color;
+  protected int oppcolor;
+  protected GameBoard currentBoard = new GameBoard();
+  protected long timeLimit; // milliseconds per move, or 0 for no limit
+  protected long playoutLimit; // playouts per move, or 0 for no limit
+  protected int threads = 1;
+  protected double exploration = DEFAULT_EXPLORATION;
+  protected int virtualLoss = 1; // visits added to a node on the way down, before its result is known
+  protected int samples = 2; // random moves a playout picks the best of
+
+  // the tree: the root is node 0, and the children of node i are the
+  // childCount[i] nodes from firstChild[i] on
+  private final int[] moveOf;
+  private final int[] firstChild;
+  private final int[] childCount;
+  private final AtomicIntegerArray state;
+  private final AtomicLongArray visits; // visits << 32 | reward to the player who moved into the node
+  private final AtomicInteger nodeCount = new AtomicInteger();
+
+  private final AtomicLong playouts = new AtomicLong(); // playouts of the current move
+  private volatile boolean stopped;
+  private long deadline; // System.nanoTime() at which the current move ends, or 0
+  private Worker[] workers;
+  private ExecutorService pool;
+  protected long lastPlayouts; // playouts of the last move
+  protected long lastNanos; // time spent on the last move
+
+  // Creates a player of the given color (0 for black, 1 for white) that
+  // searches for timeLimit milliseconds a move.
+  public MCTSPlayer(int color, long timeLimit) {
+    this(color, timeLimit, 0, DEFAULT_NODE_BITS);
+  }
+
+  // Creates a player of the given color that searches each move for
+  // timeLimit milliseconds or playoutLimit playouts, whichever comes first,
+  // where 0 means no limit, in a tree of up to 2^nodeBits nodes.  nodeBits
+  // is kept between 10 and 26, so the root's children always fit.
+  public MCTSPlayer(int color, long timeLimit, long playoutLimit, int nodeBits) {
+    if (timeLimit <= 0 && playoutLimit <= 0) {
+      throw new IllegalArgumentException("a search needs a time limit or a playout limit");
+    }
+    this.color = color;
+    oppcolor = 1 - color;
+    this.timeLimit = Math.max(timeLimit, 0);
+    this.playoutLimit = Math.max(playoutLimit, 0);
+    int capacity = 1 << Math.max(Math.min(nodeBits, 26), 10);
+    moveOf = new int[capacity];
+    firstChild = new int[capacity];
+    childCount = new int[capacity];
+    state = new AtomicIntegerArray(capacity);
+    visits = new AtomicLongArray(capacity);
+    myName = "MCTSPlayer";
+  }
+
+  // Sets the number of threads that search the tree together.
+  public void setThreads(int threads) {
+    threads = Math.max(threads, 1);
+    if (threads != this.threads && pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    this.threads = threads;
+    workers = null;
+  }
+
+  // Sets the UCT exploration constant: higher tries more of the moves that
+  // look worse, lower searches deeper into the ones that look best.
+  public void setExploration(double exploration) {
+    this.exploration = Math.max(exploration, 0);
+  }
+
+  // Sets the virtual loss, the visits a thread adds to each node on its way
+  // down to keep the other threads off its line until its playout is back.
+  public void setVirtualLoss(int virtualLoss) {
+    this.virtualLoss = Math.max(virtualLoss, 1);
+  }
+
+  // Sets how many random moves each playout move is the best of, by
+  // lineScore.  1 is uniform random play.
+  public void setPlayoutSamples(int samples) {
+    this.samples = Math.max(samples, 1);
+  }
+
+  // Returns the playouts of the last move.
+  public long lastPlayouts() {
+    return lastPlayouts;
+  }
+
+  // Returns the playouts per second of the last move.
+  public double playoutsPerSecond() {
+    return lastNanos == 0 ? 0 : lastPlayouts * 1e9 / lastNanos;
+  }
+
+  // Returns the nodes in the tree of the last move.
+  public int treeSize() {
+    return Math.min(nodeCount.get(), moveOf.length);
+  }
+
+  // Returns a new move by "this" player.  Internally records the move (updates
+  // the internal game board) as a move by "this" player.
+  public Move chooseMove() {
+    long start = System.nanoTime();
+    int move = search(start);
+    lastNanos = System.nanoTime() - start;
+    if (move == 0) {
+      return new Move(); // there is no legal move: quit
+    }
+    Move m = GameBoard.decode(move);
+    currentBoard.performMove(m, color);
+    return m;
+  }
+
+  // Builds a tree for the current board and returns the move at its root
+  // that was visited most, or 0 if there is none.
+  protected int search(long start) {
+    playouts.set(0);
+    lastPlayouts = 0;
+    if (workers == null) {
+      workers = new Worker[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = new Worker(0x9E3779B97F4A7C15L * (i + 1) + System.nanoTime());
+      }
+    }
+    for (Worker w : workers) {
+      w.board = currentBoard.copy();
+    }
+
+    // the root, expanded here; a move that wins at once needs no search
+    nodeCount.set(1);
+    state.set(0, LEAF);
+    visits.set(0, 0);
+    Worker first = workers[0];
+    if (!first.expand(0, color)) {
+      // no legal move, or no room for the root's children: never quit
+      // while there is a move to play
+      return first.board.generateMoves(color, first.buffer) > 0 ? first.buffer[0] : 0;
+    }
+    for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+      if (first.winner(moveOf[c], color) == color) {
+        return moveOf[c];
+      }
+    }
+    if (childCount[0] == 1) {
+      return moveOf[firstChild[0]];
+    }
+
+    stopped = false;
+    deadline = timeLimit > 0 ? start + timeLimit * 1000000 : 0;
+    if (threads > 1 && pool == null) {
+      // idle threads exit, so a player that is dropped leaves none behind
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads - 1, threads - 1, 1, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "MCTSPlayer search");
+            t.setDaemon(true);
+            return t;
+          });
+      executor.allowCoreThreadTimeOut(true);
+      pool = executor;
+    }
+    Future<?>[] running = new Future<?>[threads - 1];
+    for (int i = 1; i < threads; i++) {
+      running[i - 1] = pool.submit(workers[i]::run);
+    }
+    first.run();
+    for (Future<?> f : running) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (java.util.concurrent.ExecutionException e) {
+        throw new RuntimeException("search thread failed", e.getCause());
+      }
+    }
+    lastPlayouts = playouts.get();
+    for (Worker w : workers) {
+      assert w.board.sameAs(currentBoard) : "a playout did not undo all its moves";
+    }
+
+    // the most visited move, with ties to the better reward
+    int best = firstChild[0];
+    for (int c = best + 1; c < firstChild[0] + childCount[0]; c++) {
+      long v = visits.get(c);
+      long b = visits.get(best);
+      if ((v >>> 32) > (b >>> 32) || ((v >>> 32) == (b >>> 32) && (int) v > (int) b)) {
+        best = c;
+      }
+    }
+    return moveOf[best];
+  }
+
+  // Tells every worker to stop once the time or the playouts run out.
+  private void countPlayout() {
+    long n = playouts.incrementAndGet();
+    if ((playoutLimit > 0 && n >= playoutLimit)
+        || (deadline != 0 && (n & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0)) {
+      stopped = true;
+    }
+  }
+
+  /**
+   *  A thread's share of the search: its own board, move buffers and random
+   *  numbers, all made once and reused for every playout.
+   */
+  class Worker {
+
+    GameBoard board;
+    final int[] buffer = new int[GameBoard.MAX_MOVES];
+    final int[] scratch = new int[GameBoard.MAX_MOVES]; // for GameBoard.winningSquares
+    final IntStack path = new IntStack(64); // nodes from the root down
+    final IntStack line = new IntStack(256); // moves made on board since the root
+    long seed;
+
+    Worker(long seed) {
+      this.seed = seed == 0 ? 1 : seed;
+    }
+
+    void run() {
+      while (!stopped) {
+        iterate();
+        countPlayout();
+      }
+    }
+
+    // One playout: down the tree by UCT, a leaf expanded if it has been
+    // visited enough, a random game from there, and the result added to every
+    // node on the way back.
+    void iterate() {
+      int node = 0;
+      int side = color; // to move at node
+      int winner = -1;
+      boolean over = false;
+      path.clear();
+      line.clear();
+      path.push(0);
+      visits.getAndAdd(0, (long) virtualLoss << 32);
+      while (true) {
+        if (state.get(node) != EXPANDED) {
+          if ((visits.get(node) >>> 32) < EXPAND_VISITS || !expand(node, side)) {
+            break;
+          }
+        }
+        node = select(node);
+        path.push(node);
+        visits.getAndAdd(node, (long) virtualLoss << 32);
+        winner = play(moveOf[node], side);
+        side = 1 - side;
+        if (winner != -1) {
+          over = true;
+          break;
+        }
+      }
+      if (!over) {
+        winner = playout(side);
+      }
+      // move i of the line was made by color when i is even, and node i of
+      // the path was moved into by color when i is odd
+      for (int i = line.size() - 1; i >= 0; i--) {
+        board.undoMove(line.get(i), (i & 1) == 0 ? color : oppcolor);
+      }
+      long undo = (long) (virtualLoss - 1) << 32;
+      for (int i = path.size() - 1; i >= 0; i--) {
+        int mover = (i & 1) == 1 ? color : oppcolor;
+        int reward = winner == -1 ? DRAW : winner == mover ? WIN : LOSS;
+        visits.getAndAdd(path.get(i), reward - undo);
+      }
+    }
+
+    // Returns the child of node with the best UCT value, trying every child
+    // once before any twice.
+    int select(int node) {
+      int first = firstChild[node];
+      int end = first + childCount[node];
+      double logVisits = Math.log(Math.max(visits.get(node) >>> 32, 1));
+      int best = first;
+      double bestValue = Double.NEGATIVE_INFINITY;
+      for (int c = first; c < end; c++) {
+        long v = visits.get(c);
+        long n = v >>> 32;
+        if (n == 0) {
+          return c;
+        }
+        double value = (int) v / (2.0 * n) + exploration * Math.sqrt(logVisits / n);
+        if (value > bestValue) {
+          bestValue = value;
+          best = c;
+        }
+      }
+      return best;
+    }
+
+    // Gives node, a leaf with side to move on board, a child for each legal
+    // move, with the moves that complete a network first so they are the
+    // first tried.  Returns false if another thread is expanding it, the
+    // tree is full, or there is no legal move.
+    boolean expand(int node, int side) {
+      if (!state.compareAndSet(node, LEAF, EXPANDING)) {
+        return state.get(node) == EXPANDED;
+      }
+      int n = board.generateMoves(side, buffer);
+      int first = n == 0 || nodeCount.get() + n > moveOf.length ? -1 : nodeCount.getAndAdd(n);
+      if (first < 0 || first + n > moveOf.length) {
+        state.set(node, LEAF);
+        return false;
+      }
+      long wins = board.winningSquares(side, scratch, false);
+      for (int i = 0, front = 0; i < n && wins != 0; i++) {
+        if ((wins & (1L << GameBoard.moveTo(buffer[i]))) != 0) {
+          int m = buffer[i];
+          buffer[i] = buffer[front];
+          buffer[front++] = m;
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        moveOf[first + i] = buffer[i];
+        childCount[first + i] = 0;
+        visits.set(first + i, 0);
+        state.set(first + i, LEAF);
+      }
+      firstChild[node] = first;
+      childCount[node] = n;
+      state.set(node, EXPANDED); // publishes the children
+      return true;
+    }
+
+    // Makes move for side on board and returns the winner, or -1 if the game
+    // goes on.
+    int play(int move, int side) {
+      board.doMove(move, side);
+      line.push(move);
+      // a move that completes both networks loses
+      if (board.hasNetwork(1 - side)) {
+        return 1 - side;
+      }
+      return board.hasNetwork(side) ? side : -1;
+    }
+
+    // Returns who wins if side makes move, or -1 if nobody does yet.
+    int winner(int move, int side) {
+      int w = play(move, side);
+      board.undoMove(move, side);
+      line.removeLast();
+      return w;
+    }
+
+    // Plays the game out at random with side to move, and returns the
+    // winner, or -1 for a draw.
+    int playout(int side) {
+      for (int ply = 0; ply < MAX_PLAYOUT_PLIES; ply++) {
+        int n = board.generateMoves(side, buffer);
+        if (n == 0) {
+          return -1;
+        }
+        int move = buffer[nextInt(n)];
+        for (int i = 1; i < samples; i++) {
+          int other = buffer[nextInt(n)];
+          if (board.lineScore(other, side) > board.lineScore(move, side)) {
+            move = other;
+          }
+        }
+        int winner = play(move, side);
+        side = 1 - side;
+        if (winner != -1) {
+          return winner;
+        }
+      }
+      return -1;
+    }
+
+    // xorshift64*: a uniform int from 0 to n - 1.
+    int nextInt(int n) {
+      seed ^= seed >>> 12;
+      seed ^= seed << 25;
+      seed ^= seed >>> 27;
+      return (int) (((seed * 0x2545F4914F6CDD1DL) >>> 32) * n >>> 32);
+    }
+  }
+
+  // If the Move m is legal, records the move as a move by the opponent
+  // (updates the internal game board) and returns true.  If the move is
+  // illegal, returns false without modifying the internal state of "this"
+  // player.  This method allows your opponents to inform you of their moves.
+  public boolean opponentMove(Move m) {
+    if (currentBoard.isValidMove(m, oppcolor)) {
+      currentBoard.performMove(m, oppcolor);
+      return true;
+    }
+    return false;
+  }
+
+  // If the Move m is legal, records the move as a move by "this" player
+  // (updates the internal game board) and returns true.  If the move is
+  // illegal, returns false without modifying the internal state of "this"
+  // player.  This method is used to help set up "Network problems" for your
+  // player to solve.
+  public boolean forceMove(Move m) {
+    if (currentBoard.isValidMove(m, color)) {
+      currentBoard.performMove(m, color);
+      return true;
+    }
+    return false;
+  }
+
+}
@@ -14,36 +14,296 @@ public class MachinePlayer extends Player {
 	protected int searchDepth;
 	protected int oppcolor;
 	protected GameBoard currentBoard;
+	protected TranspositionTable table;
+	protected boolean ageTable = true; // start a new table generation every move, unless the table's owner does
+	protected BookFile book; // moves played without searching, or null
+	protected BookFile endgame; // decided STEP-phase positions, or null
+	protected long timeLimit; // milliseconds per move, or 0 to always search to searchDepth
+	protected long deadline; // System.nanoTime() at which a timed search gives up, or 0
+	protected boolean aborted; // set once the deadline has passed during a search
+	protected volatile boolean stopped; // set by another thread to end a search early
+	protected long nodes; // nodes visited by the current search
+	protected int depthReached; // depth of the last completed iteration
+	protected int threads = 1; // threads used to search the root moves
+	protected MachinePlayer[] helpers; // per-thread searchers, each with its own board
+	protected java.util.concurrent.ExecutorService pool;
+	protected IntStack moveStack = new IntStack(4 * GameBoard.MAX_MOVES); // the moves of every ply of the current line
+	protected int[] bestMoves; // bestMoves[depth] is the best move found by the last search at that depth
+	protected boolean moveOrdering = true; // try moves in orderMoves order rather than generated order
+	protected long[] orderKeys = new long[GameBoard.MAX_MOVES]; // scratch space for sorting moves
+	protected int[][] killers; // killers[depth] holds the last two moves that caused a cutoff at that depth
+	protected int[][] history; // history[color][move] grows each time the move causes a cutoff
+	protected int searchMode = ALPHA_BETA; // ALPHA_BETA or PVS
+	protected int[][] pv; // pv[depth] is the line from the last node searched at that depth
+	protected int[] pvLength; // pvLength[depth] is the number of moves in pv[depth]
+	protected int[] principalVariation = new int[0]; // the line found by the last chooseMove
+	protected boolean pondering; // search on the opponent's time
+	protected MachinePlayer ponderer; // searches on its own board while the opponent thinks
+	protected Thread ponderThread; // runs ponderer, or null when not pondering
+	protected long ponderKey; // key of the position ponderer searched for us to move, or 0
+	protected int ponderDepth; // depth of the last finished pondering iteration
+	protected int ponderMove; // its best move
+	protected int ponderScore; // and its score
+	protected SearchStats stats = new SearchStats(); // what the search did, move by move
+	protected int quiescence; // plies of quiescence search past the horizon, or 0 for none
+	protected int[] threatBuffer; // scratch space for GameBoard.winningSquares
+	protected int lateMoveReduction; // plies taken off the search of a late move, or 0 for none
+	protected int reductionDepth = 3; // shallowest depth at which late moves are reduced
+	protected int fullDepthMoves = 4; // moves at a node searched to full depth before any is reduced
+	protected int futilityDepth; // deepest node at which futile moves are pruned, or 0 for none
+	protected int futilityMargin = MAX_SWING; // most a ply is taken to change positionalScore
 
+  // 2^18 slots, 4MB per player
+  protected static final int DEFAULT_TABLE_BITS = 18;
+  // deepest iteration a timed search will start
+  protected static final int MAX_DEPTH = 32;
+  // the clock is read once every this many nodes, plus one
+  protected static final int CLOCK_CHECK_MASK = 255;
+  // move ordering keys: the table's move, then killers, then history plus
+  // LINE_WEIGHT times GameBoard.lineScore
+  protected static final int HASH_MOVE_SCORE = 1 << 30;
+  protected static final int KILLER_SCORE = 1 << 29;
+  protected static final int LINE_WEIGHT = 4;
+  // half the width of the first aspiration window around the last score
+  protected static final int ASPIRATION_WINDOW = 16;
+  // the most one move can raise the mover's positionalScore: 16 for the
+  // connections of the chip it places, 8 for the opponent's it cuts, and 20
+  // for a goal area reached
+  protected static final int MAX_SWING = 44;
+
+  // Search modes.  ALPHA_BETA searches every move with the full window.  PVS
+  // searches every move after the first with a null window and only searches
+  // again if it turns out better, and deepens one ply at a time even without
+  // a time limit so each iteration can start from a narrow aspiration window
+  // around the score of the last one.
+  public static final int ALPHA_BETA = 0;
+  public static final int PVS = 1;
 	
   // Creates a machine player with the given color.  Color is either 0 (black)
   // or 1 (white).  (White has the first move.)
   public MachinePlayer(int color) {
-    this.color = color;
-    if (color == 0) {
-      oppcolor = 1;
-    } else {
-      oppcolor = 0;
-    }
-    currentBoard = new GameBoard();
-    searchDepth = 3; // sets default search depth to 3.
+    this(color, 3); // sets default search depth to 3.
   }
 
   // Creates a machine player with the given color and search depth.  Color is
   // either 0 (black) or 1 (white).  (White has the first move.)
   public MachinePlayer(int color, int searchDepth) {
+    this(color, searchDepth, new TranspositionTable(DEFAULT_TABLE_BITS, TranspositionTable.REPLACE_DEPTH));
+  }
+
+  // Creates a machine player with the given color and search depth that uses
+  // the given transposition table, or none if it is null.  Players of the
+  // same color may share a table.  The depth is kept between 1 and MAX_DEPTH.
+  public MachinePlayer(int color, int searchDepth, TranspositionTable table) {
 	    this.color = color;
-      if (searchDepth < 1) {
-        this.searchDepth = 1;
-      } else {
-        this.searchDepth = searchDepth;
-      }
+      this.searchDepth = Math.min(Math.max(searchDepth, 1), MAX_DEPTH);
 	    if (color == 0) {
 	      oppcolor = 1;
 	    } else {
 	      oppcolor = 0;
 	    }
 	    currentBoard = new GameBoard();
+	    this.table = table;
+	    book = OpeningBook.shared();
+	    endgame = EndgameTable.shared();
+	    reserve(this.searchDepth);
+  }
+
+  // Returns a machine player with the given color that deepens its search one
+  // ply at a time until timeLimit milliseconds have been spent on the move.
+  public static MachinePlayer timed(int color, long timeLimit) {
+    MachinePlayer p = new MachinePlayer(color, MAX_DEPTH);
+    p.setTimeLimit(Math.max(timeLimit, 1));
+    return p;
+  }
+
+  // Creates a helper that searches on behalf of parent, on its own board but
+  // sharing the parent's transposition table.
+  MachinePlayer(MachinePlayer parent) {
+    color = parent.color;
+    oppcolor = parent.oppcolor;
+    searchDepth = parent.searchDepth;
+    searchMode = parent.searchMode;
+    quiescence = parent.quiescence;
+    moveOrdering = parent.moveOrdering;
+    lateMoveReduction = parent.lateMoveReduction;
+    reductionDepth = parent.reductionDepth;
+    fullDepthMoves = parent.fullDepthMoves;
+    futilityDepth = parent.futilityDepth;
+    futilityMargin = parent.futilityMargin;
+    table = parent.table;
+    ageTable = parent.ageTable;
+    endgame = parent.endgame;
+    currentBoard = parent.currentBoard.copy();
+    reserve(searchDepth);
+  }
+
+  // Makes sure there are per-depth tables for searches up to the given
+  // depth, empties the move stack, and forgets the killer moves of the
+  // previous search.
+  protected void reserve(int depth) {
+    moveStack.clear();
+    if (bestMoves == null || bestMoves.length <= depth) {
+      bestMoves = new int[depth + 1];
+      killers = new int[depth + 1][2];
+      pv = new int[depth + 1][depth + 1];
+      pvLength = new int[depth + 1];
+    }
+    if (history == null) {
+      history = new int[2][1 << 14];
+    }
+    for (int i = 0; i < killers.length; i++) {
+      killers[i][0] = 0;
+      killers[i][1] = 0;
+    }
+  }
+
+  // Sets the depth of the search, or the deepest it may go with a time limit.
+  public void setSearchDepth(int searchDepth) {
+    stopPondering();
+    this.searchDepth = Math.min(Math.max(searchDepth, 1), MAX_DEPTH);
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Makes the search deepen until timeLimit milliseconds have been spent on
+  // the move, or go to the search depth every move if timeLimit is 0.
+  public void setTimeLimit(long timeLimit) {
+    this.timeLimit = Math.max(timeLimit, 0);
+  }
+
+  // Turns move ordering on or off.  With it off, moves are searched in the
+  // order generateMoves produces them, except for the table's best move.
+  public void setMoveOrdering(boolean moveOrdering) {
+    stopPondering();
+    this.moveOrdering = moveOrdering;
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Replaces the opening book, which is the one shipped with the player unless
+  // set here.  A null book turns it off.
+  public void setOpeningBook(BookFile book) {
+    this.book = book;
+  }
+
+  // Replaces the endgame table, which is the one shipped with the player
+  // unless set here.  A null table turns it off.
+  public void setEndgameTable(BookFile endgame) {
+    stopPondering();
+    this.endgame = endgame;
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Chooses how the tree is searched: ALPHA_BETA or PVS.
+  public void setSearchMode(int searchMode) {
+    if (searchMode != ALPHA_BETA && searchMode != PVS) {
+      throw new IllegalArgumentException("unknown search mode " + searchMode);
+    }
+    stopPondering();
+    this.searchMode = searchMode;
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Sets how many plies past its depth the search may go to settle network
+  // threats, or 0 to stop at the depth.  See quiesce.
+  public void setQuiescence(int plies) {
+    stopPondering();
+    quiescence = Math.max(plies, 0);
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Sets late move reductions: at nodes with at least minDepth plies left,
+  // every move after the first fullMoves is searched plies shallower, with a
+  // null window, and searched again in full only if it turns out better than
+  // the best so far.  plies of 0 turns reductions off, which is the default.
+  // Nothing is reduced where either side can complete a network next move,
+  // and neither is the table's move, a killer, or a move that threatens a
+  // network, so a reduction never hides a network a ply or two away.
+  public void setLateMoveReduction(int plies, int minDepth, int fullMoves) {
+    stopPondering();
+    lateMoveReduction = Math.max(plies, 0);
+    reductionDepth = Math.max(minDepth, 2);
+    fullDepthMoves = Math.max(fullMoves, 1);
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Sets futility pruning: at nodes with at most maxDepth plies left whose
+  // positionalScore is more than margin per ply short of the window, only
+  // the first move is searched, since no other move can reach the window.
+  // A move that makes a network threat is searched too, but only when
+  // quiescence is on or more than 2 plies are left; nearer the leaves a
+  // threat can't be cashed in, so it is pruned like any other move.  With
+  // margin MAX_SWING and maxDepth up to 2 that changes no score; a smaller
+  // margin or a greater depth prunes more and risks more.  maxDepth of 0
+  // turns it off, which is the default.
+  public void setFutilityPruning(int maxDepth, int margin) {
+    stopPondering();
+    futilityDepth = Math.max(maxDepth, 0);
+    futilityMargin = Math.max(margin, 0);
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Returns the line the last chooseMove expects to be played, starting with
+  // the move it chose, as a list of Moves.  It ends early wherever the search
+  // took a score from the transposition table instead of searching on.
+  public DList principalVariation() {
+    DList line = new DList();
+    for (int m : principalVariation) {
+      line.insertBack(GameBoard.decode(m));
+    }
+    return line;
+  }
+
+  // Returns the statistics of this player's searches.  They are always kept;
+  // see SearchStats for reading them through JMX or a log line per move.
+  public SearchStats stats() {
+    return stats;
+  }
+
+  // Sets the number of threads that search the moves at the root in
+  // parallel.  Each thread searches on its own copy of the board; they share
+  // the transposition table and the best score found so far.
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      threads = 1;
+    }
+    if (threads != this.threads && pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    this.threads = threads;
+    helpers = null;
+  }
+
+  // Replaces the transposition table used by the search, e.g. to change its
+  // size or replacement policy.  A null table turns the table off.  The table
+  // must not be shared with a player of the other color.
+  public void setTranspositionTable(TranspositionTable table) {
+    stopPondering();
+    this.table = table;
+    helpers = null;
+    ponderer = null;
+  }
+
+  // Turns pondering on or off.  A pondering player keeps searching after
+  // chooseMove returns, until the opponent's move arrives: the position after
+  // the reply its principal variation predicts, or when it predicts none, the
+  // position with the opponent to move, which covers every reply.  Whatever
+  // it finds stays in the transposition table, and if the prediction was
+  // right, the next chooseMove starts from the deepest pondering iteration
+  // that finished.  The pondering thread competes for the CPU with anything
+  // else running, including an opponent on the same machine.
+  public void setPondering(boolean pondering) {
+    if (!pondering) {
+      stopPondering();
+    }
+    this.pondering = pondering;
   }
 
 public static final boolean COMPUTER = true;
@@ -52,8 +312,6 @@ public static final boolean OPPONENT = false;
   protected int eval(GameBoard board) {
 
     // assigns a score to this gameboard.
-    int score = 0;
-
     if (board.hasNetwork(this.color)) {
         return 97; //return max score
     }
@@ -62,160 +320,788 @@ public static final boolean OPPONENT = false;
         return -97; //return min score
     }
 
-    int connections = 0;
-    boolean inGoal = false;
-    boolean inGoal2 = false;
-    for (int x = 0; x <= 7; x++) {
-      for (int y = 0; y <= 7; y++) {
-        if (board.hasPiece(x,y)) {
-          Chip piece = board.getPiece(x,y);
-          if (piece.color == this.color) {
-            DList listConnections = board.findConnections(piece);
-            connections += listConnections.length();
-            if ((this.color == 0 && piece.y == 0) || (this.color == 1 && piece.x == 0)) {
-              inGoal = true;
-            }
-            if ((this.color == 0 && piece.y == 7) || (this.color == 1 && piece.x == 7)) {
-              inGoal2 = true;
-            }
+    return positionalScore(board);
+  }
+
+  // The part of eval for a board without a network: connections and goal
+  // areas, ours minus the opponent's.  GameBoard keeps the connection counts
+  // as moves are made and unmade, so this doesn't look at the squares at all.
+  protected int positionalScore(GameBoard board) {
+    return colorScore(board, this.color) - colorScore(board, this.oppcolor);
+  }
+
+  protected int colorScore(GameBoard board, int c) {
+    int score = board.countConnections(c);
+    boolean inGoal = (board.chips[c] & GameBoard.START_GOAL[c]) != 0;
+    boolean inGoal2 = (board.chips[c] & GameBoard.END_GOAL[c]) != 0;
+
+    if (inGoal && inGoal2) {
+      // if there is at least one chip in each goal area, add 30 to the score.
+      score += 30;
+    } else if (inGoal || inGoal2) {
+      score += 10;
+    }
+    return score;
+  }
+
+
+  // Searches board to the given depth with side to move, and returns the best
+  // move found with its score.  The search itself works on packed int moves;
+  // this is where the best one becomes a Move.
+  public Best minimax(GameBoard board, boolean side, int depth, int alpha, int beta) {
+    reserve(depth);
+    Best myBest = new Best();
+    myBest.score = alphaBeta(board, side, depth, alpha, beta);
+    int move = bestMoves[Math.max(depth, 0)];
+    if (move != 0) {
+      myBest.move = GameBoard.decode(move);
+    }
+    return myBest;
+  }
+
+  // Alpha-beta search.  Returns the score of board and leaves the best move in
+  // bestMoves[depth] (0 at a leaf) and the line it leads to in pv[depth].
+  // Each node pushes its moves onto moveStack and pops them before it
+  // returns, so once the stack has grown to the deepest line a search
+  // allocates nothing.
+  protected int alphaBeta(GameBoard board, boolean side, int depth, int alpha, int beta) {
+
+    int myColor = color;
+
+    if (side == OPPONENT) {
+      myColor = oppcolor;
+    }
+
+    if (depth < 0) {
+      depth = 0;
+    }
+    bestMoves[depth] = 0;
+    pvLength[depth] = 0;
+
+    if (countNode()) {
+      return 0; // unwinding; the caller throws this result away
+    }
+
+    // look this position up before anything else; a deep enough entry can
+    // settle the node without searching it again
+    long key = 0;
+    int hashMove = 0;
+    if (table != null && depth > 0) {
+      key = board.hashKey(myColor);
+      long entry = table.probe(key);
+      stats.tableProbes++;
+      if (entry != 0) {
+        stats.tableHits++;
+        hashMove = TranspositionTable.move(entry);
+        int score = TranspositionTable.score(entry);
+        int bound = TranspositionTable.bound(entry);
+        if (hashMove != 0 && TranspositionTable.depth(entry) >= depth
+            && (bound == TranspositionTable.EXACT
+                || (bound == TranspositionTable.LOWER && score >= beta)
+                || (bound == TranspositionTable.UPPER && score <= alpha))) {
+          bestMoves[depth] = hashMove;
+          pv[depth][0] = hashMove;
+          pvLength[depth] = 1;
+          stats.tableCutoffs++;
+          return score;
+        }
+      }
+    }
+
+    // if this board has a win. These are the tests eval would make, done here
+    // once so a leaf doesn't repeat them.
+    if (board.hasNetwork(color)) {
+      return 97 + depth;
+    }
+    if (board.hasNetwork(oppcolor)) {
+      return -97 + depth;
+    }
+    if (depth <= 0) {
+      stats.leaves++;
+      if (endgame != null && EndgameTable.covers(board)) {
+        // a decided position scores as if the search had found the network
+        int i = endgame.find(board.canonicalKey(myColor));
+        if (i >= 0) {
+          int plies = endgame.score(i);
+          if ((plies > 0) == (side == COMPUTER)) {
+            return 97 + depth - Math.abs(plies);
           }
+          return -97 + depth - Math.abs(plies);
         }
       }
+      if (quiescence > 0) {
+        return quiesce(board, side, depth, 0, alpha, beta);
+      }
+      return positionalScore(board) + depth;
     }
-    score += connections;
 
-    if (inGoal && !inGoal2) {
-      score += 10;
+    int alphaOrig = alpha;
+    int betaOrig = beta;
+    int bestScore;
+
+    if (side == COMPUTER) {
+      bestScore = alpha;
+    } else {
+      bestScore = beta;
     }
 
-    else if (inGoal2 && !inGoal) {
-      score += 10;
+    int base = moveStack.mark();
+    int n = board.generateMoves(myColor, moveStack);
+    int[] moves = moveStack.array(); // only until the search below grows the stack
+    if (moveOrdering) {
+      orderMoves(board, moves, base, n, hashMove, depth, myColor);
+    } else if (hashMove != 0) {
+      // search the table's best move first
+      for (int i = base; i < base + n; i++) {
+        if (moves[i] == hashMove) {
+          System.arraycopy(moves, base, moves, base + 1, i - base);
+          moves[base] = hashMove;
+          break;
+        }
+      }
     }
 
-    else if (inGoal && inGoal2) {
-      // if there is at least one chip in each goal area, add ___ to the score.
-      score += 30;
+    int bestMove = n > 0 ? moves[base] : 0; //any legal move
+
+    // late moves may be searched shallower, and near the leaves a position too
+    // far outside the window may skip all but its first move, but only while
+    // neither side can complete a network on its next move: then every
+    // reply matters, however late or quiet it looks
+    boolean reduce = lateMoveReduction > 0 && depth >= reductionDepth && n > fullDepthMoves;
+    boolean futile = futilityDepth > 0 && depth <= futilityDepth && n > 1
+        && (side == COMPUTER ? positionalScore(board) + futilityMargin * depth <= alpha
+            : positionalScore(board) - futilityMargin * depth >= beta);
+    if ((reduce || futile) && (canComplete(board, myColor) || canComplete(board, 1 - myColor))) {
+      reduce = false;
+      futile = false;
     }
+    // a threat made now can only be cashed in by a move of ours further down
+    boolean threatsCount = quiescence > 0 || depth > 2;
 
+    // with assertions enabled, every undoMove is checked against a snapshot
+    GameBoard snapshot = null;
+    assert (snapshot = board.copy()) != null;
 
-    int oconnections = 0;
-    boolean oinGoal = false;
-    boolean oinGoal2 = false;
-    for (int x = 0; x <= 7; x++) {
-      for (int y = 0; y <= 7; y++) {
-        if (board.hasPiece(x,y)) {
-          Chip opiece = board.getPiece(x,y);
-          if (opiece.color == this.oppcolor) {
-            DList listConnections = board.findConnections(opiece);
-            oconnections += listConnections.length();
-            if ((this.oppcolor == 0 && opiece.y == 0) || (this.oppcolor == 1 && opiece.x == 0)) {
-              oinGoal = true;
-            }
-            if ((this.oppcolor == 0 && opiece.y == 7) || (this.oppcolor == 1 && opiece.x == 7)) {
-              oinGoal2 = true;
-            }
+    for (int i = 0; i < n; i++) { //looping through legal moves
+      int m = moveStack.get(base + i);
+      if (futile && i > 0 && !threatsCount) {
+        stats.futilityPrunes++;
+        continue;
+      }
+      board.doMove(m, myColor);
+      if (futile && i > 0 && !canComplete(board, myColor)) {
+        board.undoMove(m, myColor);
+        assert board.sameAs(snapshot) : "undoMove did not restore the board after " + GameBoard.decode(m);
+        stats.futilityPrunes++;
+        continue;
+      }
+      int reply = 0;
+      boolean settled = false;
+      if (reduce && i >= fullDepthMoves && m != hashMove && m != killers[depth][0] && m != killers[depth][1]
+          && !canComplete(board, myColor)) {
+        // a null-window search at reduced depth; a move that beats the best
+        // so far there is searched again as if it hadn't been reduced
+        stats.reductions++;
+        if (side == COMPUTER) {
+          reply = alphaBeta(board, !side, depth-1-lateMoveReduction, alpha, alpha + 1);
+          settled = reply <= alpha;
+        } else {
+          reply = alphaBeta(board, !side, depth-1-lateMoveReduction, beta - 1, beta);
+          settled = reply >= beta;
+        }
+        if (!settled && !aborted) {
+          stats.reSearches++;
+        }
+      }
+      if (settled || aborted) {
+        // the reduced search stands
+      } else if (searchMode == PVS && i > 0) {
+        // only ask whether m beats the best move so far; search it properly
+        // if it does
+        if (side == COMPUTER) {
+          reply = alphaBeta(board, !side, depth-1, alpha, alpha + 1);
+          if (reply > alpha && reply < beta && !aborted) {
+            reply = alphaBeta(board, !side, depth-1, alpha, beta);
+          }
+        } else {
+          reply = alphaBeta(board, !side, depth-1, beta - 1, beta);
+          if (reply < beta && reply > alpha && !aborted) {
+            reply = alphaBeta(board, !side, depth-1, alpha, beta);
           }
         }
+      } else {
+        reply = alphaBeta(board, !side, depth-1, alpha, beta);
+      }
+      board.undoMove(m, myColor);
+      assert board.sameAs(snapshot) : "undoMove did not restore the board after " + GameBoard.decode(m);
+      if (aborted) {
+        // keep a legal move, so even an iteration cut short has one to play
+        bestMoves[depth] = bestMove;
+        moveStack.release(base);
+        return bestScore;
       }
-    }
-    score -= oconnections;
 
-    if (oinGoal && !oinGoal2) {
-      score -= 10;
-    }
+      if (side == COMPUTER && reply > bestScore) {
+        bestMove = m;
+        bestScore = reply;
+        alpha = reply;
+        updatePrincipalVariation(m, depth);
+      } else if (side == OPPONENT && reply < bestScore){
+        bestMove = m;
+        bestScore = reply;
+        beta = reply;
+        updatePrincipalVariation(m, depth);
+      }
+
+      if (bestScore >= 100) {
+        break;
+      }
 
-    else if (oinGoal2 && !oinGoal) {
-      score -= 10;
+      if (alpha >= beta) {
+        stats.cutoff(i);
+        if (moveOrdering) {
+          recordCutoff(m, depth, myColor);
+        }
+        break;
+      }
     }
+    moveStack.release(base);
 
-    else if (oinGoal && oinGoal2) {
-      // if there is at least one chip in each goal area, add ___ to the score.
-      score -= 30;
+    if (table != null && bestMove != 0) {
+      int bound = TranspositionTable.EXACT;
+      if (bestScore <= alphaOrig) {
+        bound = TranspositionTable.UPPER;
+      } else if (bestScore >= betaOrig) {
+        bound = TranspositionTable.LOWER;
+      }
+      table.store(key, depth, bound, bestScore, bestMove);
     }
+    bestMoves[depth] = bestMove;
+    return bestScore;
+  }
 
-    return score;
+  // Returns true if c can complete a network with its next move.
+  protected boolean canComplete(GameBoard board, int c) {
+    if (threatBuffer == null) {
+      threatBuffer = new int[GameBoard.MAX_MOVES];
+    }
+    return board.winningSquares(c, threatBuffer, true) != 0;
   }
 
+  // Counts a node and reads the clock once every CLOCK_CHECK_MASK + 1 nodes.
+  // Returns true once the search has to stop.
+  protected boolean countNode() {
+    nodes++;
+    if ((nodes & CLOCK_CHECK_MASK) == 0
+        && (stopped || (deadline != 0 && System.nanoTime() - deadline >= 0))) {
+      aborted = true;
+    }
+    return aborted;
+  }
 
-  public Best minimax(GameBoard board, boolean side, int depth, int alpha, int beta) {
+  // Quiescence search: what alphaBeta does instead of stopping when it runs
+  // out of depth.  If the side to move can complete a network, it scores as
+  // the network a ply later.  If the other side threatens one, the side to
+  // move has to stop it, so only the moves that can are searched: onto a
+  // square the threat would use, or between two of the other side's chips
+  // that see each other.  If none of them is left, the threat scores as a
+  // network two plies later.  Otherwise, or qply plies past the depth, the
+  // position scores as at a leaf.  Scores keep counting depth down past 0,
+  // so a network found here ranks just as one found by a deeper search.
+  protected int quiesce(GameBoard board, boolean side, int depth, int qply, int alpha, int beta) {
+    if (qply > 0) {
+      if (countNode()) {
+        return 0;
+      }
+      if (board.hasNetwork(color)) {
+        return 97 + depth;
+      }
+      if (board.hasNetwork(oppcolor)) {
+        return -97 + depth;
+      }
+      stats.leaves++;
+    }
+    int myColor = side == COMPUTER ? color : oppcolor;
+    if (threatBuffer == null) {
+      threatBuffer = new int[GameBoard.MAX_MOVES];
+    }
+    if (board.winningSquares(myColor, threatBuffer, true) != 0) {
+      return (side == COMPUTER ? 97 : -97) + depth - 1;
+    }
+    int standPat = positionalScore(board) + depth;
+    if (qply >= quiescence) {
+      return standPat;
+    }
+    long threats = board.winningSquares(1 - myColor, threatBuffer, false);
+    if (threats == 0) {
+      return standPat;
+    }
 
-    int myColor = color;
+    long blocks = threats | board.cuttingSquares(1 - myColor);
+    // keep only the blocking moves on the stack
+    int base = moveStack.mark();
+    int generated = board.generateMoves(myColor, moveStack);
+    int[] moves = moveStack.array();
+    int n = 0;
+    for (int i = base; i < base + generated; i++) {
+      if ((blocks & (1L << GameBoard.moveTo(moves[i]))) != 0) {
+        moves[base + n++] = moves[i];
+      }
+    }
+    moveStack.release(base + n);
+    if (n == 0) {
+      moveStack.release(base);
+      return (side == COMPUTER ? -97 : 97) + depth - 2;
+    }
 
-    if (side == OPPONENT) {
-      myColor = oppcolor;
+    int bestScore = side == COMPUTER ? alpha : beta;
+    for (int i = 0; i < n; i++) {
+      int m = moveStack.get(base + i);
+      board.doMove(m, myColor);
+      int reply = quiesce(board, !side, depth - 1, qply + 1, alpha, beta);
+      board.undoMove(m, myColor);
+      if (aborted) {
+        moveStack.release(base);
+        return bestScore;
+      }
+      if (side == COMPUTER && reply > bestScore) {
+        bestScore = reply;
+        alpha = reply;
+      } else if (side == OPPONENT && reply < bestScore) {
+        bestScore = reply;
+        beta = reply;
+      }
+      if (alpha >= beta) {
+        break;
+      }
     }
+    moveStack.release(base);
+    return bestScore;
+  }
 
-    Best myBest = new Best();
-    Best reply;
+  // Makes pv[depth] the move followed by the line just searched below it.
+  protected void updatePrincipalVariation(int move, int depth) {
+    int[] line = pv[depth];
+    line[0] = move;
+    int n = pvLength[depth - 1];
+    System.arraycopy(pv[depth - 1], 0, line, 1, n);
+    pvLength[depth] = n + 1;
+  }
 
-    if (board.hasNetwork(color) || board.hasNetwork(oppcolor) || depth <= 0) { // if this board has a win
-      myBest.score = eval(board) + depth;
-      return myBest;
+  // Sorts the moves so the most promising are searched first: the table's best
+  // move, then this depth's killer moves, then the rest by history score plus
+  // a bonus for each connection the move makes or opponent connection it cuts.
+  // The n moves start at moves[start].
+  protected void orderMoves(GameBoard board, int[] moves, int start, int n, int hashMove, int depth, int myColor) {
+    long[] keys = orderKeys;
+    int[] killer = killers[depth];
+    int[] scores = history[myColor];
+    for (int i = 0; i < n; i++) {
+      int m = moves[start + i];
+      int score;
+      if (m == hashMove) {
+        score = HASH_MOVE_SCORE;
+      } else if (m == killer[0]) {
+        score = KILLER_SCORE;
+      } else if (m == killer[1]) {
+        score = KILLER_SCORE - 1;
+      } else {
+        score = scores[m] + LINE_WEIGHT * board.lineScore(m, myColor);
+      }
+      // highest score first; equal scores keep generated order
+      keys[i] = ((long) -score << 32) | m;
     }
+    java.util.Arrays.sort(keys, 0, n);
+    for (int i = 0; i < n; i++) {
+      moves[start + i] = (int) keys[i];
+    }
+  }
 
-    if (side == COMPUTER) {
-      myBest.score = alpha;
-    } else {
-      myBest.score = beta;
+  // Remembers a move that caused a cutoff as a killer for its depth and in
+  // the history table.
+  protected void recordCutoff(int move, int depth, int myColor) {
+    int[] killer = killers[depth];
+    if (killer[0] != move) {
+      killer[1] = killer[0];
+      killer[0] = move;
     }
+    history[myColor][move] += depth * depth;
+  }
 
-    DList validMoves = board.calculateValidMoves(myColor);
-    DListNode current = validMoves.head.next;
+  // Returns a new move by "this" player.  Internally records the move (updates
+  // the internal game board) as a move by "this" player.
+  public Move chooseMove() {
+    stopPondering();
+    stats.beginMove();
+    Move move = selectMove();
+    stats.endMove(depthReached, nodes);
+    if (pondering && move.moveKind != Move.QUIT) {
+      startPondering();
+    }
+    return move;
+  }
 
-    myBest.move = (Move)current.item; //any legal move
+  // Picks a move for chooseMove: from the opening book or the endgame table
+  // if they have one, otherwise by searching.  Makes the move on the board.
+  protected Move selectMove() {
+    nodes = 0;
+    if (book != null) {
+      int m = book.probe(currentBoard.hashKey(color));
+      // the key could belong to another position, so check the move first
+      if (m != 0 && currentBoard.isValidMove(GameBoard.decode(m), color)) {
+        Move move = GameBoard.decode(m);
+        currentBoard.performMove(move, color);
+        depthReached = 0;
+        principalVariation = new int[] { m };
+        return move;
+      }
+    }
+    if (endgame != null && EndgameTable.covers(currentBoard)) {
+      int symmetry = currentBoard.canonicalSymmetry(color);
+      int i = endgame.find(currentBoard.symmetricKey(symmetry, color));
+      // the table's move is for the canonical form of the position
+      int m = i >= 0 ? GameBoard.symmetricMove(symmetry, endgame.move(i)) : 0;
+      if (i >= 0 && endgame.score(i) > 0 && currentBoard.isValidMove(GameBoard.decode(m), color)) {
+        // a proven win: play it instead of hoping the search sees as far
+        Move move = GameBoard.decode(m);
+        currentBoard.performMove(move, color);
+        depthReached = 0;
+        principalVariation = new int[] { m };
+        return move;
+      }
+    }
+    if (table != null && ageTable) {
+      table.newSearch();
+    }
+    if (history != null) {
+      // let old history fade so it follows the game
+      for (int[] scores : history) {
+        for (int i = 0; i < scores.length; i++) {
+          scores[i] >>= 1;
+        }
+      }
+    }
+    Best myBest = null;
+    int firstDepth = 1;
+    if (ponderer != null && ponderer.ponderDepth > 0 && ponderer.ponderMove != 0
+        && ponderKey == currentBoard.hashKey(color)) {
+      // the opponent played the predicted move and pondering already
+      // searched this position: carry on from where it got to
+      myBest = new Best();
+      myBest.move = GameBoard.decode(ponderer.ponderMove);
+      myBest.score = ponderer.ponderScore;
+      firstDepth = ponderer.ponderDepth + 1;
+      depthReached = ponderer.ponderDepth;
+      principalVariation = ponderer.principalVariation;
+    }
+    ponderKey = 0;
+    if (timeLimit > 0 || searchMode == PVS) {
+      myBest = iterativeDeepening(firstDepth, myBest);
+    } else if (firstDepth <= searchDepth) {
+      myBest = searchRoot(searchDepth, -100, 100);
+      depthReached = searchDepth;
+      principalVariation = java.util.Arrays.copyOf(pv[searchDepth], pvLength[searchDepth]);
+    }
+    if (myBest.move == null) {
+      return new Move(); // the game is over or there is no legal move: quit
+    }
+    currentBoard.performMove(myBest.move, color);
+    return myBest.move;
+  } 
 
-    while (current != validMoves.head) { //looping through legal moves
-      GameBoard newBoard = board.copy();
-      Move m = (Move)current.item;
-      newBoard.performMove(m, myColor);
+  // Searches to depth 1, 2, 3, ... until the time limit runs out, or up to
+  // searchDepth when there is none, and returns the result of the deepest
+  // search that finished.  Each iteration leaves its best moves in the
+  // transposition table, where the next one picks them up and searches them
+  // first.  In PVS mode each iteration after the first starts with an
+  // aspiration window around the last score, widened on whichever side the
+  // score falls outside of it.
+  protected Best iterativeDeepening() {
+    return iterativeDeepening(1, null);
+  }
 
-      reply = minimax(newBoard, !side, depth-1, alpha, beta);
+  // Iterative deepening that starts at firstDepth, given best, the result of
+  // the iteration before it (null when firstDepth is 1).
+  protected Best iterativeDeepening(int firstDepth, Best best) {
+    if (best != null && best.score >= 97) {
+      return best; // already a forced win
+    }
+    long start = System.nanoTime();
+    deadline = 0;
+    if (timeLimit > 0) {
+      deadline = start + timeLimit * 1000000;
+      if (deadline == 0) {
+        deadline = 1; // 0 means no deadline
+      }
+    }
+    aborted = false;
+    for (int depth = firstDepth; depth <= searchDepth; depth++) {
+      int alpha = -100;
+      int beta = 100;
+      int delta = ASPIRATION_WINDOW;
+      if (searchMode == PVS && best != null) {
+        alpha = Math.max(-100, best.score - delta);
+        beta = Math.min(100, best.score + delta);
+      }
+      Best result = searchRoot(depth, alpha, beta);
+      while (!aborted) {
+        if (result.score <= alpha && alpha > -100) {
+          alpha = Math.max(-100, alpha - delta);
+        } else if (result.score >= beta && beta < 100) {
+          beta = Math.min(100, beta + delta);
+        } else {
+          break;
+        }
+        delta *= 2;
+        result = searchRoot(depth, alpha, beta);
+      }
+      if (aborted && best != null) {
+        break; // an unfinished iteration is not trusted over the last finished one
+      }
+      best = result;
+      depthReached = depth;
+      principalVariation = java.util.Arrays.copyOf(pv[depth], pvLength[depth]);
+      // stop on a forced win, or when the next iteration can't finish in time
+      if (best.score >= 97 || aborted
+          || (timeLimit > 0 && (System.nanoTime() - start) * 2 > timeLimit * 1000000)) {
+        break;
+      }
+    }
+    deadline = 0;
+    aborted = false;
+    if ((best == null || best.move == null) && !currentBoard.hasNetwork(0) && !currentBoard.hasNetwork(1)) {
+      // never quit while there is a legal move
+      int[] legal = new int[GameBoard.MAX_MOVES];
+      if (currentBoard.generateMoves(color, legal) > 0) {
+        if (best == null) {
+          best = new Best();
+        }
+        best.move = GameBoard.decode(legal[0]);
+      }
+    }
+    return best;
+  }
 
-      //System.out.print(m.toString());
-      //System.out.print(", ");
-      //System.out.print(reply.score);
-      //System.out.print(", ");
-      //System.out.println(depth);
+  // Searches the current board to the given depth, on this thread alone or
+  // split across the root moves when more than one thread is configured.
+  protected Best searchRoot(int depth, int alpha, int beta) {
+    if (threads <= 1 || depth < 2) {
+      return minimax(currentBoard, COMPUTER, depth, alpha, beta);
+    }
+    return parallelRoot(depth, alpha, beta);
+  }
 
-      if (side == COMPUTER && reply.score > myBest.score) {
-        myBest.move = m;
-        myBest.score = reply.score;
-        alpha = reply.score;
-      } else if (side == OPPONENT && reply.score < myBest.score){
-        myBest.move = m;
-        myBest.score = reply.score;
-        beta = reply.score;
+  // Root splitting: this thread searches the first root move (the table's best
+  // move, when there is one) to establish a bound, then all threads take the
+  // remaining moves from a shared counter.  Every thread searches on its own
+  // board and starts each move from the best score found so far by any of them.
+  protected Best parallelRoot(int depth, final int alpha, final int beta) {
+    reserve(depth);
+    nodes++;
+    int n = currentBoard.generateMoves(color, moveStack);
+    final int[] moves = moveStack.toArray(); // the helpers share these
+    moveStack.clear();
+    Best myBest = new Best();
+    myBest.score = alpha;
+    if (n == 0) {
+      return myBest;
+    }
+    long key = currentBoard.hashKey(color);
+    if (table != null) {
+      int hashMove = TranspositionTable.move(table.probe(key));
+      for (int i = 1; i < n; i++) {
+        if (moves[i] == hashMove) {
+          int m = moves[i];
+          moves[i] = moves[0];
+          moves[0] = m;
+          break;
+        }
       }
+    }
+
+    final int[] scores = new int[n];
+    final int[] windows = new int[n]; // alpha each move was searched with
+    final int[][] lines = new int[n][]; // the line below each move
+    currentBoard.doMove(moves[0], color);
+    scores[0] = alphaBeta(currentBoard, OPPONENT, depth - 1, alpha, beta);
+    currentBoard.undoMove(moves[0], color);
+    windows[0] = alpha;
+    lines[0] = java.util.Arrays.copyOf(pv[depth - 1], pvLength[depth - 1]);
+    if (aborted) {
+      myBest.move = GameBoard.decode(moves[0]);
+      return myBest;
+    }
 
-      if (myBest.score >= 100) {
-        return myBest;
+    if (helpers == null) {
+      helpers = new MachinePlayer[threads - 1];
+      for (int i = 0; i < helpers.length; i++) {
+        helpers[i] = new MachinePlayer(this);
       }
+    }
+    if (pool == null) {
+      // idle threads exit, so a player that is dropped leaves none behind
+      java.util.concurrent.ThreadPoolExecutor executor = new java.util.concurrent.ThreadPoolExecutor(
+          threads - 1, threads - 1, 1, java.util.concurrent.TimeUnit.SECONDS,
+          new java.util.concurrent.LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "MachinePlayer search");
+            t.setDaemon(true);
+            return t;
+          });
+      executor.allowCoreThreadTimeOut(true);
+      pool = executor;
+    }
 
-      if (alpha >= beta) {
-        return myBest;
+    final java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger(1);
+    final java.util.concurrent.atomic.AtomicInteger sharedAlpha =
+        new java.util.concurrent.atomic.AtomicInteger(Math.max(alpha, scores[0]));
+    java.util.List<java.util.concurrent.Future<?>> running = new java.util.ArrayList<>();
+    for (MachinePlayer helper : helpers) {
+      helper.currentBoard = currentBoard.copy();
+      helper.deadline = deadline;
+      helper.aborted = false;
+      helper.nodes = 0;
+      running.add(pool.submit(() -> helper.searchRootMoves(moves, scores, windows, lines, next, sharedAlpha, depth, beta)));
+    }
+    searchRootMoves(moves, scores, windows, lines, next, sharedAlpha, depth, beta);
+    for (int i = 0; i < running.size(); i++) {
+      try {
+        running.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        aborted = true;
+      } catch (java.util.concurrent.ExecutionException e) {
+        throw new RuntimeException("search thread failed", e.getCause());
       }
+      nodes += helpers[i].nodes;
+      stats.absorb(helpers[i].stats);
+      aborted |= helpers[i].aborted;
+    }
 
-      current = current.next;
+    // A score only counts if it beat the bound its move was searched with;
+    // otherwise it is just an upper bound.  Ties go to the earlier move, which
+    // is the move a single-threaded search would have kept.
+    int best = 0;
+    for (int i = 0; i < n; i++) {
+      if (windows[i] != Integer.MIN_VALUE && scores[i] > windows[i] && scores[i] > myBest.score) {
+        best = i;
+        myBest.score = scores[i];
+      }
+    }
+    int bestMove = moves[best];
+    myBest.move = GameBoard.decode(bestMove);
+    pv[depth][0] = bestMove;
+    System.arraycopy(lines[best], 0, pv[depth], 1, lines[best].length);
+    pvLength[depth] = lines[best].length + 1;
+    if (table != null && !aborted) {
+      int bound = TranspositionTable.EXACT;
+      if (myBest.score <= alpha) {
+        bound = TranspositionTable.UPPER;
+      } else if (myBest.score >= beta) {
+        bound = TranspositionTable.LOWER;
+      }
+      table.store(key, depth, bound, myBest.score, bestMove);
     }
     return myBest;
   }
 
+  // Worker loop for parallelRoot: claims root moves until none are left.
+  // Moves that were never finished keep Integer.MIN_VALUE as their window.
+  void searchRootMoves(int[] moves, int[] scores, int[] windows, int[][] lines,
+                       java.util.concurrent.atomic.AtomicInteger next,
+                       java.util.concurrent.atomic.AtomicInteger sharedAlpha, int depth, int beta) {
+    reserve(depth);
+    int i;
+    while ((i = next.getAndIncrement()) < moves.length) {
+      windows[i] = Integer.MIN_VALUE;
+      int a = sharedAlpha.get();
+      if (a >= beta) {
+        continue;
+      }
+      currentBoard.doMove(moves[i], color);
+      int score = alphaBeta(currentBoard, OPPONENT, depth - 1, a, beta);
+      currentBoard.undoMove(moves[i], color);
+      if (aborted) {
+        return;
+      }
+      scores[i] = score;
+      windows[i] = a;
+      lines[i] = java.util.Arrays.copyOf(pv[depth - 1], pvLength[depth - 1]);
+      int best = sharedAlpha.get();
+      while (score > best && !sharedAlpha.compareAndSet(best, score)) {
+        best = sharedAlpha.get();
+      }
+    }
+  }
 
+  // Starts pondering the current board on ponderer's thread.
+  protected void startPondering() {
+    if (ponderer == null) {
+      ponderer = new MachinePlayer(this);
+    }
+    ponderer.currentBoard = currentBoard.copy();
+    boolean side = OPPONENT;
+    ponderKey = 0;
+    if (principalVariation.length > 1
+        && currentBoard.isValidMove(GameBoard.decode(principalVariation[1]), oppcolor)) {
+      ponderer.currentBoard.doMove(principalVariation[1], oppcolor);
+      ponderKey = ponderer.currentBoard.hashKey(color);
+      side = COMPUTER;
+    }
+    ponderer.deadline = 0;
+    ponderer.aborted = false;
+    ponderer.stopped = false;
+    ponderer.nodes = 0;
+    ponderer.ponderDepth = 0;
+    final boolean toMove = side;
+    final MachinePlayer p = ponderer;
+    ponderThread = new Thread(() -> p.ponder(toMove), "MachinePlayer ponder");
+    ponderThread.setDaemon(true);
+    ponderThread.start();
+  }
 
+  // Stops the pondering thread, if there is one, and waits for it to finish.
+  protected void stopPondering() {
+    if (ponderThread == null) {
+      return;
+    }
+    ponderer.stopped = true;
+    try {
+      ponderThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // it may still be running, so it can't be used again
+      ponderer = null;
+      ponderKey = 0;
+    }
+    ponderThread = null;
+  }
 
-  // Returns a new move by "this" player.  Internally records the move (updates
-  // the internal game board) as a move by "this" player.
-  public Move chooseMove() {
-    Best myBest = minimax(currentBoard, COMPUTER, searchDepth, -100, 100);
-    currentBoard.performMove(myBest.move, color);
-    return myBest.move;
-  } 
+  // Run by the ponderer on its own thread: deepens a search of its board with
+  // side to move until stopped, keeping the result of the deepest iteration
+  // that finished in ponderDepth, ponderMove and ponderScore.
+  void ponder(boolean side) {
+    reserve(searchDepth);
+    for (int depth = 1; depth <= searchDepth; depth++) {
+      int score = alphaBeta(currentBoard, side, depth, -100, 100);
+      if (aborted) {
+        return;
+      }
+      ponderDepth = depth;
+      ponderMove = bestMoves[depth];
+      ponderScore = score;
+      principalVariation = java.util.Arrays.copyOf(pv[depth], pvLength[depth]);
+      if (score >= 97) {
+        return; // a forced win; deeper won't change it
+      }
+    }
+  }
 
   // If the Move m is legal, records the move as a move by the opponent
   // (updates the internal game board) and returns true.  If the move is
   // illegal, returns false without modifying the internal state of "this"
   // player.  This method allows your opponents to inform you of their moves.
   public boolean opponentMove(Move m) {
+    stopPondering();
     if (currentBoard.isValidMove(m, oppcolor)){
       currentBoard.performMove(m, oppcolor);
       return true;
@@ -230,6 +1116,7 @@ public static final boolean OPPONENT = false;
   // player.  This method is used to help set up "Network problems" for your
   // player to solve.
   public boolean forceMove(Move m) {
+    stopPondering();
     if (currentBoard.isValidMove(m, color)){
       currentBoard.performMove(m, color);
       return true;
@@ -0,0 +1,255 @@
+/* MatchHost.java */
+
+package player;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ *  Hosts many games in one process.  Each game side is a Session, a Player
+ *  whose chooseMove, opponentMove and forceMove run on a fixed pool of worker
+ *  threads, one call at a time per session and in the order they were made.
+ *  Java 17 has no virtual threads, and a search is all CPU, so the pool has
+ *  about as many workers as there are processors however many sessions
+ *  there are.
+ *
+ *  A session holds only its board and settings.  The search itself is done
+ *  by one MachinePlayer per worker and color, which plays the position of
+ *  whichever session it is searching for, so the per-search buffers, killer
+ *  and history tables exist once per worker rather than once per game.  The
+ *  searchers of each color share one transposition table, and the two tables
+ *  together are sized to the memory budget given to the host, however many
+ *  sessions it serves.  A shared table's generation advances once per round,
+ *  after as many moves as there are sessions, rather than on every move of
+ *  every game, so REPLACE_DEPTH still keeps the deep entries of the moves in
+ *  progress.  The rays, Zobrist keys, opening book and endgame
+ *  table are static or loaded once, so every session shares them anyway.
+ *
+ *  Every session keeps a histogram of its chooseMove latencies, from the call
+ *  to the move, waiting for a worker included; the host keeps one for all
+ *  sessions together.  MatchHostLoadTest, in the benchmarks module, drives
+ *  a host with self-play games.
+ */
+public class MatchHost implements AutoCloseable {
+
+  // bytes taken by a transposition table slot: the key and the entry
+  static final long SLOT_BYTES = 16;
+
+  private final ExecutorService pool;
+  private final TranspositionTable[] tables; // per color, shared by the searchers of that color
+  private final ThreadLocal<MachinePlayer[]> searchers = ThreadLocal.withInitial(() -> new MachinePlayer[2]);
+  private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicInteger roundMoves = new AtomicInteger(); // moves chosen since the tables last aged
+
+  // Creates a host with the given number of worker threads and at most
+  // tableBytes of transposition tables, or none if tableBytes is too small
+  // for the smallest table.
+  public MatchHost(int workers, long tableBytes) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("a host needs at least one worker");
+    }
+    pool = Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "MatchHost worker");
+      t.setDaemon(true);
+      return t;
+    });
+    tables = new TranspositionTable[2];
+    long slots = tableBytes / SLOT_BYTES / 2;
+    if (slots >= 2) {
+      int bits = Math.min(63 - Long.numberOfLeadingZeros(slots), 30);
+      for (int color = 0; color < 2; color++) {
+        tables[color] = new TranspositionTable(bits, TranspositionTable.REPLACE_DEPTH);
+      }
+    }
+  }
+
+  // Opens a session that plays color (0 for black, 1 for white) searching to
+  // the given depth.
+  public Session open(int color, int searchDepth) {
+    return open(color, searchDepth, 0);
+  }
+
+  // Opens a session that plays color searching for timeLimit milliseconds a
+  // move.
+  public Session openTimed(int color, long timeLimit) {
+    return open(color, MachinePlayer.MAX_DEPTH, Math.max(timeLimit, 1));
+  }
+
+  private Session open(int color, int searchDepth, long timeLimit) {
+    if (color != 0 && color != 1) {
+      throw new IllegalArgumentException("color must be 0 or 1");
+    }
+    Session s = new Session(color, searchDepth, timeLimit);
+    sessions.add(s);
+    return s;
+  }
+
+  // Returns the number of open sessions.
+  public int sessions() {
+    return sessions.size();
+  }
+
+  // Returns the chooseMove latencies of every session so far.
+  public LatencyHistogram latency() {
+    return latency;
+  }
+
+  // Returns the bytes taken by the transposition tables.
+  public long tableBytes() {
+    return tables[0] == null ? 0 : 2 * SLOT_BYTES * tables[0].keys.length;
+  }
+
+  // Stops taking calls, and waits for those already made to finish.
+  public void close() {
+    pool.shutdown();
+    try {
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Returns the calling worker's searcher for color, creating it on first use.
+  private MachinePlayer searcher(int color) {
+    MachinePlayer[] mine = searchers.get();
+    if (mine[color] == null) {
+      mine[color] = new MachinePlayer(color, 1, tables[color]);
+      mine[color].ageTable = false; // the host ages the shared tables, in endRound
+    }
+    return mine[color];
+  }
+
+  // Counts a move chosen, and starts a new generation in the tables once
+  // every open session has had about one move since the last.
+  private void endRound() {
+    if (tables[0] != null && roundMoves.incrementAndGet() >= Math.max(sessions.size(), 1)) {
+      synchronized (roundMoves) {
+        if (roundMoves.get() >= Math.max(sessions.size(), 1)) {
+          roundMoves.set(0);
+          tables[0].newSearch();
+          tables[1].newSearch();
+        }
+      }
+    }
+  }
+
+  /**
+   *  One side of one game on the host.  The blocking Player methods wait for
+   *  the worker; the Async ones return at once, so a single client thread can
+   *  drive many sessions.
+   */
+  public class Session extends Player {
+
+    final int color;
+    final GameBoard board = new GameBoard();
+    private final int searchDepth;
+    private final long timeLimit;
+    private volatile int searchMode = MachinePlayer.ALPHA_BETA;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private CompletableFuture<?> last = CompletableFuture.completedFuture(null);
+    private boolean closed;
+
+    Session(int color, int searchDepth, long timeLimit) {
+      this.color = color;
+      this.searchDepth = searchDepth;
+      this.timeLimit = timeLimit;
+      myName = "MatchHost session";
+    }
+
+    public int color() {
+      return color;
+    }
+
+    // Sets the search mode (MachinePlayer.ALPHA_BETA or PVS) for the moves
+    // chosen from now on.
+    public void setSearchMode(int searchMode) {
+      this.searchMode = searchMode;
+    }
+
+    // Returns this session's chooseMove latencies.
+    public LatencyHistogram latency() {
+      return latency;
+    }
+
+    public CompletableFuture<Move> chooseMoveAsync() {
+      long start = System.nanoTime();
+      return enqueue(() -> {
+        Move m = search();
+        long nanos = System.nanoTime() - start;
+        latency.record(nanos);
+        MatchHost.this.latency.record(nanos);
+        return m;
+      });
+    }
+
+    public CompletableFuture<Boolean> opponentMoveAsync(Move m) {
+      return enqueue(() -> apply(m, 1 - color));
+    }
+
+    public CompletableFuture<Boolean> forceMoveAsync(Move m) {
+      return enqueue(() -> apply(m, color));
+    }
+
+    public Move chooseMove() {
+      return chooseMoveAsync().join();
+    }
+
+    public boolean opponentMove(Move m) {
+      return opponentMoveAsync(m).join();
+    }
+
+    public boolean forceMove(Move m) {
+      return forceMoveAsync(m).join();
+    }
+
+    // Closes the session once the calls already made have run.  Later calls
+    // throw IllegalStateException.
+    public synchronized void close() {
+      closed = true;
+      last.whenComplete((r, e) -> sessions.remove(this));
+    }
+
+    // Runs task on the pool after every call made before it, whether or not
+    // they succeeded.
+    private synchronized <T> CompletableFuture<T> enqueue(Supplier<T> task) {
+      if (closed) {
+        throw new IllegalStateException("session closed");
+      }
+      CompletableFuture<T> next = last.handle((r, e) -> null).thenApplyAsync(x -> task.get(), pool);
+      last = next;
+      return next;
+    }
+
+    private boolean apply(Move m, int c) {
+      if (!board.isValidMove(m, c)) {
+        return false;
+      }
+      board.performMove(m, c);
+      return true;
+    }
+
+    // Chooses and makes a move with this worker's searcher.
+    private Move search() {
+      MachinePlayer searcher = searcher(color);
+      searcher.setSearchDepth(searchDepth);
+      searcher.setTimeLimit(timeLimit);
+      searcher.setSearchMode(searchMode);
+      searcher.currentBoard = board;
+      try {
+        return searcher.chooseMove();
+      } finally {
+        searcher.currentBoard = null;
+        endRound();
+      }
+    }
+
+  }
+
+}
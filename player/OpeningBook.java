@@ -0,0 +1,110 @@
+/* OpeningBook.java */
+
+package player;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *  The opening book: the move a deep search picks in each position of the
+ *  first few plies, which MachinePlayer plays without searching.  The book
+ *  ships as book.bin next to this class, in BookFile form, keyed by
+ *  GameBoard.hashKey of the position and the side to move.
+ *
+ *  Running this class rebuilds the book by self-play.  Each game follows the
+ *  book's own moves, except that at every ply either side may play a random
+ *  legal move instead, so the games spread out over the positions an opponent
+ *  can lead to.  Every position reached is searched once, to the given depth.
+ *
+ *  Usage: java player.OpeningBook [file] [games] [plies] [depth] [seed]
+ */
+public class OpeningBook {
+
+  static final String RESOURCE = "book.bin";
+  // chance at each ply that a self-play game leaves the book line
+  static final double VARIETY = 0.25;
+
+  private static BookFile shared;
+  private static boolean loaded;
+
+  // Returns the book shipped with the player, loading it on first use, or
+  // null if there is none.  Every player shares the one mapping.
+  static synchronized BookFile shared() {
+    if (!loaded) {
+      loaded = true;
+      try {
+        shared = BookFile.load(OpeningBook.class, RESOURCE);
+      } catch (IOException | IllegalArgumentException e) {
+        System.err.println("opening book not loaded: " + e.getMessage());
+      }
+    }
+    return shared;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path file = Paths.get(args.length > 0 ? args[0] : "player/" + RESOURCE);
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+    int plies = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    int depth = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    Random random = new Random(args.length > 4 ? Long.parseLong(args[4]) : 1);
+
+    MachinePlayer[] players = new MachinePlayer[2];
+    for (int color = 0; color < 2; color++) {
+      players[color] = new MachinePlayer(color, depth);
+      players[color].setOpeningBook(null);
+      players[color].setSearchMode(MachinePlayer.PVS);
+    }
+
+    Map<Long, int[]> book = new HashMap<>(); // key -> {move, score}
+    int[] moves = new int[GameBoard.MAX_MOVES];
+    long start = System.nanoTime();
+    for (int game = 0; game < games; game++) {
+      GameBoard board = new GameBoard();
+      int side = 1; // white moves first
+      for (int ply = 0; ply < plies; ply++) {
+        if (board.hasNetwork(0) || board.hasNetwork(1)) {
+          break;
+        }
+        long key = board.hashKey(side);
+        int[] entry = book.get(key);
+        if (entry == null) {
+          MachinePlayer p = players[side];
+          p.currentBoard = board.copy();
+          Best best = p.iterativeDeepening();
+          if (best.move == null) {
+            break;
+          }
+          entry = new int[] { GameBoard.encode(best.move), best.score };
+          book.put(key, entry);
+        }
+        int move = entry[0];
+        if (random.nextDouble() < VARIETY) {
+          int n = board.generateMoves(side, moves);
+          move = moves[random.nextInt(n)];
+        }
+        board.doMove(move, side);
+        side = 1 - side;
+      }
+      System.out.println("game " + (game + 1) + "/" + games + ": " + book.size() + " positions, "
+          + (System.nanoTime() - start) / 1000000000 + "s");
+    }
+
+    long[] keys = new long[book.size()];
+    int[] bookMoves = new int[keys.length];
+    int[] scores = new int[keys.length];
+    int i = 0;
+    for (Map.Entry<Long, int[]> e : book.entrySet()) {
+      keys[i] = e.getKey();
+      bookMoves[i] = e.getValue()[0];
+      scores[i] = e.getValue()[1];
+      i++;
+    }
+    BookFile.write(file, keys, bookMoves, scores, keys.length);
+    System.out.println("wrote " + keys.length + " positions to " + file);
+  }
+
+}
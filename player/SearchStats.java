@@ -0,0 +1,237 @@
+/* SearchStats.java */
+
+package player;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *  What a MachinePlayer's search did, move by move.  The search bumps the
+ *  counters below directly, as plain fields of an object only its own thread
+ *  touches, so keeping statistics costs a few increments per node.  At the
+ *  end of each move the counts are published, under the object's lock, to
+ *  the "last move" values and the running totals that the getters, JMX and
+ *  the optional log line read from any thread.
+ */
+public class SearchStats implements SearchStatsMBean {
+
+  // cutoffs are counted by the index of the move that caused them, with
+  // every index from CUTOFF_BUCKETS - 1 on counted together
+  public static final int CUTOFF_BUCKETS = 8;
+
+  // counted by the search during the current move
+  long leaves; // positions scored by the evaluation or the endgame table
+  long cutoffs; // beta cutoffs
+  final long[] cutoffsAt = new long[CUTOFF_BUCKETS];
+  long tableProbes; // transposition table lookups
+  long tableHits; // lookups that found an entry
+  long tableCutoffs; // hits that settled the node without searching it
+  long reductions; // late moves searched at reduced depth
+  long reSearches; // reduced moves searched again at full depth
+  long futilityPrunes; // moves skipped as futile
+
+  private long start; // System.nanoTime() when the move began
+  private PrintStream log; // where a line per move goes, or null
+
+  // published by endMove
+  private long moves;
+  private int lastDepth;
+  private long lastNodes;
+  private long lastLeaves;
+  private long lastNanos;
+  private long lastCutoffs;
+  private final long[] lastCutoffsAt = new long[CUTOFF_BUCKETS];
+  private long lastProbes;
+  private long lastHits;
+  private long lastTableCutoffs;
+  private long lastReductions;
+  private long lastReSearches;
+  private long lastFutilityPrunes;
+  private long totalNodes;
+  private long totalNanos;
+  private long totalProbes;
+  private long totalHits;
+  private long totalTableCutoffs;
+
+  // Writes a summary line to log after every move, or stops if log is null.
+  public synchronized void setLog(PrintStream log) {
+    this.log = log;
+  }
+
+  // Registers these statistics with the platform MBean server as
+  // player:type=SearchStats,name=<name>, and returns the name used.
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("player:type=SearchStats,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  // Starts counting a new move.
+  void beginMove() {
+    clearCounters();
+    start = System.nanoTime();
+  }
+
+  // Publishes the counts of the move that just ended.
+  void endMove(int depth, long nodes) {
+    long nanos = System.nanoTime() - start;
+    PrintStream out;
+    String line = null;
+    synchronized (this) {
+      moves++;
+      lastDepth = depth;
+      lastNodes = nodes;
+      lastLeaves = leaves;
+      lastNanos = nanos;
+      lastCutoffs = cutoffs;
+      System.arraycopy(cutoffsAt, 0, lastCutoffsAt, 0, CUTOFF_BUCKETS);
+      lastProbes = tableProbes;
+      lastHits = tableHits;
+      lastTableCutoffs = tableCutoffs;
+      lastReductions = reductions;
+      lastReSearches = reSearches;
+      lastFutilityPrunes = futilityPrunes;
+      totalNodes += nodes;
+      totalNanos += nanos;
+      totalProbes += tableProbes;
+      totalHits += tableHits;
+      totalTableCutoffs += tableCutoffs;
+      out = log;
+      if (out != null) {
+        line = getLastMoveSummary();
+      }
+    }
+    if (out != null) {
+      out.println(line);
+    }
+  }
+
+  // Counts a beta cutoff caused by the move at index i.
+  void cutoff(int i) {
+    cutoffs++;
+    cutoffsAt[i < CUTOFF_BUCKETS ? i : CUTOFF_BUCKETS - 1]++;
+  }
+
+  // Adds the counts of a helper that searched part of this move, and clears
+  // them there.
+  void absorb(SearchStats helper) {
+    leaves += helper.leaves;
+    cutoffs += helper.cutoffs;
+    for (int i = 0; i < CUTOFF_BUCKETS; i++) {
+      cutoffsAt[i] += helper.cutoffsAt[i];
+    }
+    tableProbes += helper.tableProbes;
+    tableHits += helper.tableHits;
+    tableCutoffs += helper.tableCutoffs;
+    reductions += helper.reductions;
+    reSearches += helper.reSearches;
+    futilityPrunes += helper.futilityPrunes;
+    helper.clearCounters();
+  }
+
+  private void clearCounters() {
+    leaves = 0;
+    cutoffs = 0;
+    java.util.Arrays.fill(cutoffsAt, 0);
+    tableProbes = 0;
+    tableHits = 0;
+    tableCutoffs = 0;
+    reductions = 0;
+    reSearches = 0;
+    futilityPrunes = 0;
+  }
+
+  private static double rate(long part, long whole) {
+    return whole == 0 ? 0 : (double) part / whole;
+  }
+
+  public synchronized long getMoves() {
+    return moves;
+  }
+
+  public synchronized int getLastDepth() {
+    return lastDepth;
+  }
+
+  public synchronized long getLastNodes() {
+    return lastNodes;
+  }
+
+  public synchronized long getLastLeaves() {
+    return lastLeaves;
+  }
+
+  public synchronized double getLastMillis() {
+    return lastNanos / 1e6;
+  }
+
+  public synchronized double getLastNodesPerSecond() {
+    return rate(lastNodes, lastNanos) * 1e9;
+  }
+
+  public synchronized long getLastCutoffs() {
+    return lastCutoffs;
+  }
+
+  public synchronized long[] getLastCutoffsByMoveIndex() {
+    return lastCutoffsAt.clone();
+  }
+
+  public synchronized double getLastFirstMoveCutoffRate() {
+    return rate(lastCutoffsAt[0], lastCutoffs);
+  }
+
+  public synchronized double getLastTableHitRate() {
+    return rate(lastHits, lastProbes);
+  }
+
+  public synchronized long getLastTableCutoffs() {
+    return lastTableCutoffs;
+  }
+
+  public synchronized long getLastReductions() {
+    return lastReductions;
+  }
+
+  public synchronized long getLastReSearches() {
+    return lastReSearches;
+  }
+
+  public synchronized long getLastFutilityPrunes() {
+    return lastFutilityPrunes;
+  }
+
+  public synchronized long getTotalNodes() {
+    return totalNodes;
+  }
+
+  public synchronized double getTotalMillis() {
+    return totalNanos / 1e6;
+  }
+
+  public synchronized double getNodesPerSecond() {
+    return rate(totalNodes, totalNanos) * 1e9;
+  }
+
+  public synchronized double getTableHitRate() {
+    return rate(totalHits, totalProbes);
+  }
+
+  public synchronized long getTotalTableCutoffs() {
+    return totalTableCutoffs;
+  }
+
+  public synchronized String getLastMoveSummary() {
+    return String.format("move %d: depth %d, %d nodes, %d leaves, %.1f ms, %.0f nodes/s, "
+        + "%d cutoffs (%.1f%% on the first move), table hits %.1f%%, %d table cutoffs",
+        moves, lastDepth, lastNodes, lastLeaves, getLastMillis(), getLastNodesPerSecond(),
+        lastCutoffs, 100 * getLastFirstMoveCutoffRate(), 100 * getLastTableHitRate(), lastTableCutoffs);
+  }
+
+  public String toString() {
+    return getLastMoveSummary();
+  }
+
+}
@@ -0,0 +1,51 @@
+/* SearchStatsMBean.java */
+
+package player;
+
+/**
+ *  The JMX view of a player's SearchStats.  "Last" values describe the most
+ *  recent move; the rest are totals since the player was created.
+ */
+public interface SearchStatsMBean {
+
+  long getMoves();
+
+  int getLastDepth();
+
+  long getLastNodes();
+
+  long getLastLeaves();
+
+  double getLastMillis();
+
+  double getLastNodesPerSecond();
+
+  long getLastCutoffs();
+
+  long[] getLastCutoffsByMoveIndex();
+
+  double getLastFirstMoveCutoffRate();
+
+  double getLastTableHitRate();
+
+  long getLastTableCutoffs();
+
+  long getLastReductions();
+
+  long getLastReSearches();
+
+  long getLastFutilityPrunes();
+
+  long getTotalNodes();
+
+  double getTotalMillis();
+
+  double getNodesPerSecond();
+
+  double getTableHitRate();
+
+  long getTotalTableCutoffs();
+
+  String getLastMoveSummary();
+
+}
@@ -0,0 +1,470 @@
+/* Tournament.java */
+
+package player;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Plays two players against each other many times, several games at once,
+ *  and reports which is stronger: the Elo difference with its 95% error, a
+ *  sequential probability ratio test, and each player's time per move and
+ *  nodes per second.  Use it to check that a change that makes the search
+ *  faster doesn't also make it play worse.
+ *
+ *  A player is given as a comma-separated list of options:
+ *    depth=N      search depth (default 3)
+ *    time=MS      search for MS milliseconds a move instead of to a depth
+ *    pvs          search in PVS mode
+ *    noorder      turn move ordering off
+ *    nobook       don't use the opening book
+ *    noendgame    don't use the endgame table
+ *    quiesce=N    search up to N plies of network threats past the depth
+ *    lmr[=R[:D[:M]]]  reduce late moves by R plies at depth D and up,
+ *                 after the first M moves (default 1:3:4)
+ *    futility[=D[:MARGIN]]  prune futile moves at depth D and below
+ *                 (default 2:44)
+ *    table=BITS   transposition table of 2^BITS slots, or 0 for none
+ *
+ *  or, for an MCTSPlayer, mcts followed by time=MS and any of:
+ *    playouts=N   stop after N playouts a move
+ *    threads=N    search the tree with N threads
+ *    samples=K    playouts pick each move as the best of K random ones
+ *    c=X          UCT exploration constant
+ *
+ *  Each pair of games starts from the same random opening, a few plies long,
+ *  with colors swapped, so neither player gains from the opening or the
+ *  color it was dealt.  The referee checks every move with
+ *  GameBoard.isValidMove; an illegal move or a quit loses.  A move that
+ *  completes networks for both players loses for the player who made it.  A
+ *  game is drawn when a position repeats for the third time with the same
+ *  player to move, or when it reaches the ply limit.
+ *
+ *  The test is for H0: elo = elo0 against H1: elo = elo1, with the usual
+ *  normal approximation to the log-likelihood ratio.  Games run on a fixed
+ *  thread pool; Java 17 has no virtual threads, and a game is all CPU, so
+ *  more threads than processors wouldn't help anyway.
+ *
+ *  With -journal, every game is appended to a GameJournal as it is played:
+ *  a record of the empty board, then one for each move, numbered by game.
+ *  Games added to a journal that already holds some are numbered after the
+ *  highest-numbered one there.
+ *
+ *  Usage: java player.Tournament [-games N] [-threads N] [-opening PLIES]
+ *             [-maxplies N] [-elo0 E] [-elo1 E] [-alpha A] [-beta B]
+ *             [-seed S] [-journal FILE] A B
+ *  e.g.   java player.Tournament -games 400 depth=3 depth=3,pvs
+ *         java player.Tournament -games 100 time=100,pvs mcts,time=100
+ */
+public class Tournament {
+
+  // One of the two sides of the match, with its running totals.
+  static class Entrant {
+    final String spec;
+    long moves; // moves chosen by this entrant
+    long nanos; // time spent in chooseMove
+    long nodes; // nodes searched by MachinePlayers, or playouts by MCTSPlayers
+
+    Entrant(String spec) {
+      this.spec = spec;
+      create(0); // fail early on a bad spec
+    }
+
+    // Builds a fresh player of the given color from the spec.
+    Player create(int color) {
+      int depth = 3;
+      long time = 0;
+      List<String> rest = new ArrayList<>();
+      for (String option : spec.split(",")) {
+        if (option.startsWith("depth=")) {
+          depth = Integer.parseInt(option.substring(6));
+        } else if (option.startsWith("time=")) {
+          time = Long.parseLong(option.substring(5));
+        } else {
+          rest.add(option);
+        }
+      }
+      if (rest.contains("mcts")) {
+        return createMcts(color, time, rest);
+      }
+      MachinePlayer p = time > 0 ? MachinePlayer.timed(color, time) : new MachinePlayer(color, depth);
+      for (String option : rest) {
+        if (option.equals("pvs")) {
+          p.setSearchMode(MachinePlayer.PVS);
+        } else if (option.equals("noorder")) {
+          p.setMoveOrdering(false);
+        } else if (option.equals("nobook")) {
+          p.setOpeningBook(null);
+        } else if (option.equals("noendgame")) {
+          p.setEndgameTable(null);
+        } else if (option.startsWith("quiesce=")) {
+          p.setQuiescence(Integer.parseInt(option.substring(8)));
+        } else if (option.equals("lmr") || option.startsWith("lmr=")) {
+          int[] v = numbers(option.substring(3), 1, 3, 4);
+          p.setLateMoveReduction(v[0], v[1], v[2]);
+        } else if (option.equals("futility") || option.startsWith("futility=")) {
+          int[] v = numbers(option.substring(8), 2, MachinePlayer.MAX_SWING);
+          p.setFutilityPruning(v[0], v[1]);
+        } else if (option.startsWith("table=")) {
+          int bits = Integer.parseInt(option.substring(6));
+          p.setTranspositionTable(bits == 0 ? null
+              : new TranspositionTable(bits, TranspositionTable.REPLACE_DEPTH));
+        } else if (!option.isEmpty()) {
+          throw new IllegalArgumentException("unknown player option " + option);
+        }
+      }
+      return p;
+    }
+
+    // Builds an MCTSPlayer from the options after time=.
+    Player createMcts(int color, long time, List<String> options) {
+      long playouts = 0;
+      int threads = 1;
+      int samples = -1;
+      double exploration = -1;
+      for (String option : options) {
+        if (option.startsWith("playouts=")) {
+          playouts = Long.parseLong(option.substring(9));
+        } else if (option.startsWith("threads=")) {
+          threads = Integer.parseInt(option.substring(8));
+        } else if (option.startsWith("samples=")) {
+          samples = Integer.parseInt(option.substring(8));
+        } else if (option.startsWith("c=")) {
+          exploration = Double.parseDouble(option.substring(2));
+        } else if (!option.equals("mcts") && !option.isEmpty()) {
+          throw new IllegalArgumentException("unknown mcts option " + option);
+        }
+      }
+      MCTSPlayer p = new MCTSPlayer(color, time, playouts, MCTSPlayer.DEFAULT_NODE_BITS);
+      p.setThreads(threads);
+      if (samples > 0) {
+        p.setPlayoutSamples(samples);
+      }
+      if (exploration >= 0) {
+        p.setExploration(exploration);
+      }
+      return p;
+    }
+
+    // Parses what follows an option's name, nothing or = and colon-separated
+    // numbers, taking the defaults for any left out.
+    static int[] numbers(String text, int... defaults) {
+      String[] parts = text.isEmpty() ? new String[0] : text.substring(1).split(":");
+      if (parts.length > defaults.length) {
+        throw new IllegalArgumentException("too many numbers in " + text);
+      }
+      int[] values = defaults.clone();
+      for (int i = 0; i < parts.length; i++) {
+        values[i] = Integer.parseInt(parts[i]);
+      }
+      return values;
+    }
+
+    synchronized void record(long moves, long nanos, long nodes) {
+      this.moves += moves;
+      this.nanos += nanos;
+      this.nodes += nodes;
+    }
+  }
+
+  static final int WIN = 1;
+  static final int DRAW = 0;
+  static final int LOSS = -1;
+
+  final Entrant a;
+  final Entrant b;
+  int games = 200;
+  int threads = Runtime.getRuntime().availableProcessors();
+  int openingPlies = 4;
+  int maxPlies = 200;
+  double elo0 = 0;
+  double elo1 = 5;
+  double alpha = 0.05;
+  double beta = 0.05;
+  long seed = 1;
+  GameJournal journal; // where games are recorded, or null
+  int firstGame; // journal number of game 0, after any games already there
+
+  int wins; // for a
+  int draws;
+  int losses;
+  int illegal; // games lost to an illegal move or a quit
+
+  Tournament(Entrant a, Entrant b) {
+    this.a = a;
+    this.b = b;
+  }
+
+  // Builds the opening shared by games 2i and 2i + 1: random legal plies that
+  // don't complete a network.  Returns the moves in order, white's first.
+  List<Move> opening(int i) {
+    Random random = new Random(seed * 1000003 + i);
+    GameBoard board = new GameBoard();
+    List<Move> moves = new ArrayList<>();
+    int[] buffer = new int[GameBoard.MAX_MOVES];
+    int side = 1;
+    for (int ply = 0; ply < openingPlies; ply++) {
+      int n = board.generateMoves(side, buffer);
+      int move = 0;
+      for (int tries = 0; tries < 4 * n && move == 0; tries++) {
+        int m = buffer[random.nextInt(n)];
+        board.doMove(m, side);
+        if (!board.hasNetwork(0) && !board.hasNetwork(1)) {
+          move = m;
+        }
+        board.undoMove(m, side);
+      }
+      if (move == 0) {
+        break;
+      }
+      board.doMove(move, side);
+      moves.add(GameBoard.decode(move));
+      side = 1 - side;
+    }
+    return moves;
+  }
+
+  // Plays one game and returns its result for a.
+  int play(int game) {
+    int aColor = game % 2 == 0 ? 1 : 0; // a is white in even games
+    Entrant[] entrants = new Entrant[2];
+    entrants[aColor] = a;
+    entrants[1 - aColor] = b;
+    Player[] players = { entrants[0].create(0), entrants[1].create(1) };
+    long[] moves = new long[2];
+    long[] nanos = new long[2];
+    long[] nodes = new long[2];
+
+    GameBoard board = new GameBoard();
+    int side = 1;
+    journal(game, 0, null, board, side);
+    List<Move> opening = opening(game / 2);
+    for (int ply = 0; ply < opening.size(); ply++) {
+      Move m = opening.get(ply);
+      players[side].forceMove(m);
+      players[1 - side].opponentMove(m);
+      board.performMove(m, side);
+      side = 1 - side;
+      journal(game, ply + 1, m, board, side);
+    }
+
+    Map<Long, Integer> seen = new HashMap<>();
+    int winner = -1;
+    for (int ply = opening.size(); ply < maxPlies; ply++) {
+      long start = System.nanoTime();
+      Move m = players[side].chooseMove();
+      nanos[side] += System.nanoTime() - start;
+      moves[side]++;
+      if (players[side] instanceof MachinePlayer) {
+        nodes[side] += ((MachinePlayer) players[side]).nodes;
+      } else if (players[side] instanceof MCTSPlayer) {
+        nodes[side] += ((MCTSPlayer) players[side]).lastPlayouts();
+      }
+      if (m == null || m.moveKind == Move.QUIT || !board.isValidMove(m, side)) {
+        synchronized (this) {
+          illegal++;
+        }
+        winner = 1 - side;
+        break;
+      }
+      board.performMove(m, side);
+      journal(game, ply + 1, m, board, 1 - side);
+      players[1 - side].opponentMove(m);
+      boolean mine = board.hasNetwork(side);
+      boolean theirs = board.hasNetwork(1 - side);
+      if (mine || theirs) {
+        winner = theirs ? 1 - side : side; // both networks: the mover loses
+        break;
+      }
+      side = 1 - side;
+      if (seen.merge(board.hashKey(side), 1, Integer::sum) >= 3) {
+        break; // third repetition
+      }
+    }
+
+    for (int c = 0; c < 2; c++) {
+      entrants[c].record(moves[c], nanos[c], nodes[c]);
+    }
+    if (winner == -1) {
+      return DRAW;
+    }
+    return winner == aColor ? WIN : LOSS;
+  }
+
+  // Records a move and the position after it, if there is a journal.
+  void journal(int game, int ply, Move m, GameBoard board, int sideToMove) {
+    if (journal != null) {
+      try {
+        journal.append(firstGame + game, ply, m, board, sideToMove);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  synchronized void record(int result) {
+    if (result == WIN) {
+      wins++;
+    } else if (result == LOSS) {
+      losses++;
+    } else {
+      draws++;
+    }
+  }
+
+  // Plays all the games, printing a line as each pair of games finishes.
+  void run() throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "Tournament game");
+      t.setDaemon(true);
+      return t;
+    });
+    List<Future<?>> running = new ArrayList<>();
+    for (int i = 0; i < games; i++) {
+      final int game = i;
+      running.add(pool.submit(() -> {
+        record(play(game));
+        int done;
+        synchronized (this) {
+          done = wins + draws + losses;
+        }
+        if (done % 20 == 0) {
+          System.out.println(summary(done));
+        }
+      }));
+    }
+    pool.shutdown();
+    for (Future<?> f : running) {
+      try {
+        f.get();
+      } catch (java.util.concurrent.ExecutionException e) {
+        pool.shutdownNow();
+        throw new RuntimeException("game failed", e.getCause());
+      }
+    }
+    pool.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  // Returns the expected score of a player elo points stronger.
+  static double expected(double elo) {
+    return 1 / (1 + Math.pow(10, -elo / 400));
+  }
+
+  // Returns the Elo difference that gives expected score s.
+  static double elo(double s) {
+    return -400 * Math.log10(1 / s - 1);
+  }
+
+  // Returns {elo, error} for the results so far, the error being half the 95%
+  // confidence interval, or null if there are no decisive results to go on.
+  synchronized double[] eloDifference() {
+    int n = wins + draws + losses;
+    if (n == 0 || wins + draws == 0 || losses + draws == 0) {
+      return null;
+    }
+    double w = (double) wins / n;
+    double d = (double) draws / n;
+    double l = (double) losses / n;
+    double s = w + d / 2;
+    double variance = w * (1 - s) * (1 - s) + d * (0.5 - s) * (0.5 - s) + l * s * s;
+    double margin = 1.96 * Math.sqrt(variance / n);
+    double lo = elo(Math.max(s - margin, 1e-9));
+    double hi = elo(Math.min(s + margin, 1 - 1e-9));
+    return new double[] { elo(s), (hi - lo) / 2 };
+  }
+
+  // Returns the log-likelihood ratio of elo1 against elo0, or 0 if there is
+  // nothing to go on yet.
+  synchronized double llr() {
+    int n = wins + draws + losses;
+    if (n == 0) {
+      return 0;
+    }
+    double w = (double) wins / n;
+    double d = (double) draws / n;
+    double s = w + d / 2;
+    double variance = w + d / 4 - s * s;
+    if (variance <= 0) {
+      return 0;
+    }
+    double s0 = expected(elo0);
+    double s1 = expected(elo1);
+    return (s1 - s0) * (2 * s - s0 - s1) / (2 * variance / n);
+  }
+
+  synchronized String summary(int done) {
+    StringBuilder line = new StringBuilder(String.format("%d games: +%d =%d -%d", done, wins, draws, losses));
+    double[] elo = eloDifference();
+    if (elo != null) {
+      line.append(String.format(", elo %+.1f +- %.1f", elo[0], elo[1]));
+    }
+    line.append(String.format(", llr %.2f", llr()));
+    return line.toString();
+  }
+
+  void report() {
+    System.out.println();
+    System.out.println(a.spec + " vs " + b.spec);
+    System.out.println(summary(wins + draws + losses) + (illegal > 0 ? ", " + illegal + " illegal moves" : ""));
+    double lower = Math.log(beta / (1 - alpha));
+    double upper = Math.log((1 - beta) / alpha);
+    double llr = llr();
+    String verdict = llr >= upper ? "H1 accepted" : llr <= lower ? "H0 accepted" : "inconclusive";
+    System.out.println(String.format("sprt elo0=%.1f elo1=%.1f: llr %.2f in (%.2f, %.2f), %s",
+        elo0, elo1, llr, lower, upper, verdict));
+    for (Entrant e : new Entrant[] { a, b }) {
+      System.out.println(String.format("%-24s %8.2f ms/move %12.0f nodes/s", e.spec,
+          e.moves == 0 ? 0 : e.nanos / 1e6 / e.moves, e.nanos == 0 ? 0 : e.nodes * 1e9 / e.nanos));
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException, IOException {
+    List<String> specs = new ArrayList<>();
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].startsWith("-") && i + 1 < args.length) {
+        options.put(args[i].substring(1), args[++i]);
+      } else {
+        specs.add(args[i]);
+      }
+    }
+    if (specs.size() != 2) {
+      System.err.println("usage: java player.Tournament [-games N] [-threads N] [-opening PLIES]"
+          + " [-maxplies N] [-elo0 E] [-elo1 E] [-alpha A] [-beta B] [-seed S] [-journal FILE] A B");
+      System.exit(2);
+    }
+    Tournament t = new Tournament(new Entrant(specs.get(0)), new Entrant(specs.get(1)));
+    t.games = Integer.parseInt(options.getOrDefault("games", "" + t.games));
+    t.threads = Integer.parseInt(options.getOrDefault("threads", "" + t.threads));
+    t.openingPlies = Integer.parseInt(options.getOrDefault("opening", "" + t.openingPlies));
+    t.maxPlies = Integer.parseInt(options.getOrDefault("maxplies", "" + t.maxPlies));
+    t.elo0 = Double.parseDouble(options.getOrDefault("elo0", "" + t.elo0));
+    t.elo1 = Double.parseDouble(options.getOrDefault("elo1", "" + t.elo1));
+    t.alpha = Double.parseDouble(options.getOrDefault("alpha", "" + t.alpha));
+    t.beta = Double.parseDouble(options.getOrDefault("beta", "" + t.beta));
+    t.seed = Long.parseLong(options.getOrDefault("seed", "" + t.seed));
+    if (options.containsKey("journal")) {
+      t.journal = GameJournal.open(Paths.get(options.get("journal")));
+      t.firstGame = t.journal.nextGame();
+    }
+    try {
+      t.run();
+    } finally {
+      if (t.journal != null) {
+        t.journal.close();
+      }
+    }
+    t.report();
+  }
+
+}
@@ -0,0 +1,115 @@
+/* TranspositionTable.java */
+
+package player;
+
+/**
+ *  A fixed-size hash table of search results, keyed by GameBoard.hashKey().
+ *  The number of slots is a power of two, so a key is mapped to its slot with
+ *  a mask.  Each slot holds the full key and one packed entry, so probing and
+ *  storing never allocate.
+ *
+ *  Several search threads may share one table without locking.  A slot stores
+ *  the key XORed with the entry, so a slot torn by two threads writing at once
+ *  no longer matches its key and reads as a miss.
+ *
+ *  An entry records the depth that was searched, whether the score is exact or
+ *  only a lower or upper bound, the score, and the best move (as packed by
+ *  GameBoard.encode()).  Scores are from the owning player's point of view, so
+ *  a table must not be shared between players of different colors.
+ */
+public class TranspositionTable {
+
+  // bound types
+  public static final int EXACT = 0;
+  public static final int LOWER = 1;  // the real score is >= the stored score
+  public static final int UPPER = 2;  // the real score is <= the stored score
+
+  // replacement policies
+  public static final int REPLACE_ALWAYS = 0;   // newest result wins
+  public static final int REPLACE_DEPTH = 1;    // keep deeper results from the current search
+
+  protected long[] keys;
+  protected long[] entries;
+  protected int mask;
+  protected int policy;
+  protected int generation;
+
+  // Creates a table with 2^bits slots using the given replacement policy.
+  public TranspositionTable(int bits, int policy) {
+    if (bits < 1 || bits > 30) {
+      throw new IllegalArgumentException("table size must be 2^1 to 2^30 slots");
+    }
+    keys = new long[1 << bits];
+    entries = new long[1 << bits];
+    mask = (1 << bits) - 1;
+    this.policy = policy;
+  }
+
+  // Marks the start of a new search.  Under REPLACE_DEPTH, entries left over
+  // from earlier searches can then be replaced regardless of their depth.
+  public void newSearch() {
+    generation = (generation + 1) & 0xFF;
+  }
+
+  // Empties the table.
+  public void clear() {
+    java.util.Arrays.fill(keys, 0);
+    java.util.Arrays.fill(entries, 0);
+  }
+
+  // Returns the number of slots.
+  public int size() {
+    return mask + 1;
+  }
+
+  // Returns the packed entry stored for key, or 0 if there is none.
+  public long probe(long key) {
+    int i = (int) key & mask;
+    long entry = entries[i];
+    if (entry != 0 && (keys[i] ^ entry) == key) {
+      return entry;
+    }
+    return 0;
+  }
+
+  // Stores a search result for key, subject to the replacement policy.
+  public void store(long key, int depth, int bound, int score, int move) {
+    int i = (int) key & mask;
+    long old = entries[i];
+    if (policy == REPLACE_DEPTH && old != 0 && (keys[i] ^ old) != key
+        && generation(old) == generation && depth(old) > depth) {
+      return;
+    }
+    long entry = pack(depth, bound, score, move, generation);
+    keys[i] = key ^ entry;
+    entries[i] = entry;
+  }
+
+  /* Entry layout: move in bits 0-13, bound in bits 14-15, depth in bits 16-23,
+   * generation in bits 24-31, score in bits 32-47 and a valid flag in bit 48. */
+  static long pack(int depth, int bound, int score, int move, int generation) {
+    return (move & 0x3FFFL) | ((long) bound << 14) | ((long) (depth & 0xFF) << 16)
+        | ((long) generation << 24) | ((long) (score & 0xFFFF) << 32) | (1L << 48);
+  }
+
+  public static int move(long entry) {
+    return (int) (entry & 0x3FFF);
+  }
+
+  public static int bound(long entry) {
+    return (int) (entry >>> 14) & 3;
+  }
+
+  public static int depth(long entry) {
+    return (int) (entry >>> 16) & 0xFF;
+  }
+
+  public static int score(long entry) {
+    return (short) (entry >>> 32);
+  }
+
+  static int generation(long entry) {
+    return (int) (entry >>> 24) & 0xFF;
+  }
+
+}